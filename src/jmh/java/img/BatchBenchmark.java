@@ -0,0 +1,73 @@
+package img;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares matching every pair of a batch through one appMotion
+ * call per pair with matching them through Tracker.matchAllPairs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchBenchmark {
+    @Param({"8", "16"})
+    public int images;
+
+    @Param({"4"})
+    public int threads;
+
+    private List<RasterImg> batch;
+    private Tracker tracker;
+    private SearchOptions options;
+
+    @Setup
+    public void setUp(){
+        RasterImg source = SyntheticImages.texture(256, 256, 1);
+        batch = new ArrayList<>();
+        for (int i = 0; i < images; i++){
+            batch.add(SyntheticImages.translated(source, i % 5, -(i % 3)));
+        }
+        tracker = new Tracker(threads);
+        options = SearchOptions.spiral();
+    }
+
+    @TearDown
+    public void tearDown(){
+        tracker.close();
+    }
+
+    @Benchmark
+    public void sequentialCalls(Blackhole blackhole){
+        for (int i = 0; i < batch.size(); i++){
+            for (int j = i + 1; j < batch.size(); j++){
+                blackhole.consume(tracker.appMotion(
+                        batch.get(i), batch.get(j), 16, 16, options
+                ));
+            }
+        }
+    }
+
+    @Benchmark
+    public void matchAllPairs(Blackhole blackhole){
+        tracker.matchAllPairs(batch, 16, 16, options, blackhole::consume);
+    }
+}
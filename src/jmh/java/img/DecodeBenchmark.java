@@ -0,0 +1,65 @@
+package img;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+
+/** Measures decoding of a PNG file into an Img */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+    @Param({"256", "1024", "2048"})
+    public int size;
+
+    private File file;
+
+    @Setup
+    public void writeImage() throws IOException {
+        RasterImg img = SyntheticImages.texture(size, size * 9 / 16, 1);
+        BufferedImage buffered = new BufferedImage(
+                img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_RGB
+        );
+        buffered.setRGB(
+                0, 0, img.getWidth(), img.getHeight(),
+                img.rgbRaster(), 0, img.getWidth()
+        );
+        file = File.createTempFile("decode-benchmark", ".png");
+        ImageIO.write(buffered, "png", file);
+    }
+
+    @TearDown
+    public void deleteImage(){
+        file.delete();
+    }
+
+    /** default path of Img.fromPath for PNG files */
+    @Benchmark
+    public Img fromPath() throws IOException {
+        return Img.fromPath(file.getPath());
+    }
+
+    /** ImageIO path, used by Img.fromPath for other formats */
+    @Benchmark
+    public Img imageIo() throws IOException {
+        return RasterImg.RasterImgFromPath(file.getPath());
+    }
+}
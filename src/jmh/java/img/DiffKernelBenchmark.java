@@ -0,0 +1,68 @@
+package img;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures cost of scoring one candidate offset, which is most of
+ * the cost of a spiral search.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiffKernelBenchmark {
+    private static final int PIXELS = 4096;
+
+    @Param({"256", "1024", "2048"})
+    public int size;
+
+    private RasterImg imgA;
+    private RasterImg imgB;
+    private int[] rgbA;
+    private int[] rgbB;
+
+    @Setup
+    public void makeImages(){
+        imgA = SyntheticImages.texture(size, size, 1);
+        imgB = SyntheticImages.translated(imgA, 5, -3);
+        rgbA = SyntheticImages.texture(PIXELS, 1, 2).rgbRaster();
+        rgbB = SyntheticImages.texture(PIXELS, 1, 3).rgbRaster();
+    }
+
+    /** full scan of the overlap; the bound never excludes it */
+    @Benchmark
+    public float diffAtOffsetFullScan(){
+        return imgA.diffAtOffset(imgB, 5, -3, 1f);
+    }
+
+    /** wrong offset, cut short by a tight bound */
+    @Benchmark
+    public float diffAtOffsetExcluded(){
+        return imgA.diffAtOffset(imgB, -7, 4, 0.01f);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public float compareRGB(){
+        float sum = 0f;
+        for (int i = 0; i < PIXELS; i++){
+            sum += ColorUtil.compareRGB(rgbA[i], rgbB[i]);
+        }
+        return sum;
+    }
+}
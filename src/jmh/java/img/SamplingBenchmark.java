@@ -0,0 +1,71 @@
+package img;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a spiral search scoring every pixel against one scoring
+ * a sample of pixels and verifying its best candidates.
+ * Setup checks that each rate finds the true offset.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SamplingBenchmark {
+    @Param({"1024", "2048"})
+    public int size;
+
+    @Param({"1", "0.0625"})
+    public float samplingRate;
+
+    private RasterImg imgA;
+    private RasterImg imgB;
+    private Tracker tracker;
+    private SearchOptions options;
+
+    @Setup
+    public void setUp(){
+        imgA = SyntheticImages.texture(size, size, 1);
+        // noise keeps the true offset from scoring 0, after which the
+        // exact search would prune every other offset at its first row
+        imgB = SyntheticImages.noisy(
+                SyntheticImages.translated(imgA, 5, -3), 12, 2
+        );
+        tracker = new Tracker(1);
+        // sums are disabled so that only the scoring differs
+        options = SearchOptions.spiral()
+                .setEliminationBlocks(0)
+                .setSamplingRate(samplingRate);
+        float[] offset = appMotion();
+        if (offset == null || offset[0] != 5f || offset[1] != -3f){
+            throw new IllegalStateException(
+                    "rate " + samplingRate + " did not find the true offset"
+            );
+        }
+    }
+
+    @TearDown
+    public void tearDown(){
+        tracker.close();
+    }
+
+    @Benchmark
+    public float[] appMotion(){
+        return tracker.appMotion(imgA, imgB, 16, 16, options);
+    }
+}
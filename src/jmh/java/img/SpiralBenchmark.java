@@ -0,0 +1,47 @@
+package img;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** Measures walking the spiral of offsets inside a gate */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpiralBenchmark {
+    @Param({"8", "64", "256"})
+    public int gate;
+
+    @Benchmark
+    public long iterate(){
+        long sum = 0;
+        for (int[] offset : new SpiralCoordinates(gate * 2, gate * 2)){
+            sum += offset[0] * 31 + offset[1];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long locate(){
+        SpiralCoordinates spiral = new SpiralCoordinates(gate * 2, gate * 2);
+        int[] xy = new int[2];
+        long sum = 0;
+        for (long i = 0; i < spiral.size(); i++){
+            spiral.locate(i, xy);
+            sum += xy[0] * 31 + xy[1];
+        }
+        return sum;
+    }
+}
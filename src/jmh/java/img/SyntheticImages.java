@@ -0,0 +1,112 @@
+package img;
+
+import java.util.Random;
+
+/**
+ * Generates textured images and translated copies of them, so that
+ * benchmarks do not depend on image files and know the true offset.
+ */
+final class SyntheticImages {
+    // spacing of random control points of the texture, in pixels
+    private static final int CELL = 8;
+
+    private SyntheticImages(){}
+
+    /**
+     * Returns image of smooth value noise, with a little per-pixel
+     * grain, so that every offset scores differently.
+     * @param width: int
+     * @param height: int
+     * @param seed: long
+     * @return RasterImg
+     */
+    static RasterImg texture(int width, int height, long seed){
+        Random random = new Random(seed);
+        int gridWidth = width / CELL + 2;
+        int gridHeight = height / CELL + 2;
+        int[] grid = new int[gridWidth * gridHeight];
+        for (int i = 0; i < grid.length; i++){
+            grid[i] = random.nextInt() & 0xFFFFFF;
+        }
+        int[] rgb = new int[width * height];
+        for (int y = 0; y < height; y++){
+            int gy = y / CELL;
+            int fy = y % CELL;
+            for (int x = 0; x < width; x++){
+                int gx = x / CELL;
+                int fx = x % CELL;
+                int a = grid[gy * gridWidth + gx];
+                int b = grid[gy * gridWidth + gx + 1];
+                int c = grid[(gy + 1) * gridWidth + gx];
+                int d = grid[(gy + 1) * gridWidth + gx + 1];
+                int grain = random.nextInt(8);
+                rgb[y * width + x] = 0xFF000000 |
+                        blend(a, b, c, d, fx, fy, 16, grain) << 16 |
+                        blend(a, b, c, d, fx, fy, 8, grain) << 8 |
+                        blend(a, b, c, d, fx, fy, 0, grain);
+            }
+        }
+        return new RasterImg(width, height, rgb);
+    }
+
+    /**
+     * Returns copy of src in which pixel (x, y) holds pixel
+     * (x + dx, y + dy) of src, so that src.appMotion(copy) is
+     * (dx, dy). Pixels shifted in from outside src repeat its edge.
+     * @param src: Img
+     * @param dx: int
+     * @param dy: int
+     * @return RasterImg
+     */
+    static RasterImg translated(Img src, int dx, int dy){
+        int width = src.getWidth();
+        int height = src.getHeight();
+        int[] srcRgb = src.rgbRaster();
+        int[] rgb = new int[width * height];
+        for (int y = 0; y < height; y++){
+            int sy = Math.max(0, Math.min(height - 1, y + dy));
+            for (int x = 0; x < width; x++){
+                int sx = Math.max(0, Math.min(width - 1, x + dx));
+                rgb[y * width + x] = srcRgb[sy * width + sx];
+            }
+        }
+        return new RasterImg(width, height, rgb);
+    }
+
+    /**
+     * Returns copy of src with uniform noise of up to amplitude
+     * added to each channel, as from a camera sensor, so that even
+     * the true offset does not match exactly.
+     * @param src: Img
+     * @param amplitude: int
+     * @param seed: long
+     * @return RasterImg
+     */
+    static RasterImg noisy(Img src, int amplitude, long seed){
+        Random random = new Random(seed);
+        int[] srcRgb = src.rgbRaster();
+        int[] rgb = new int[srcRgb.length];
+        for (int i = 0; i < rgb.length; i++){
+            int color = 0xFF000000;
+            for (int shift = 16; shift >= 0; shift -= 8){
+                int value = ((srcRgb[i] >> shift) & 0xFF) +
+                        random.nextInt(2 * amplitude + 1) - amplitude;
+                color |= Math.max(0, Math.min(255, value)) << shift;
+            }
+            rgb[i] = color;
+        }
+        return new RasterImg(src.getWidth(), src.getHeight(), rgb);
+    }
+
+    private static int blend(
+            int a, int b, int c, int d,
+            int fx, int fy, int shift, int grain
+    ){
+        int top = ((a >> shift) & 0xFF) * (CELL - fx) +
+                ((b >> shift) & 0xFF) * fx;
+        int bottom = ((c >> shift) & 0xFF) * (CELL - fx) +
+                ((d >> shift) & 0xFF) * fx;
+        int value = (top * (CELL - fy) + bottom * fy) / (CELL * CELL);
+        return Math.min(255, value + grain);
+    }
+}
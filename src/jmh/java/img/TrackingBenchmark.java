@@ -0,0 +1,72 @@
+package img;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a whole appMotion call, for each search mode, across
+ * image sizes, gates and thread counts.
+ * Setup checks that each mode finds the true offset, so a fast but
+ * wrong engine does not go unnoticed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrackingBenchmark {
+    @Param({"256", "512", "1024"})
+    public int size;
+
+    @Param({"8", "32", "64"})
+    public int gate;
+
+    @Param({"1", "4", "16"})
+    public int threads;
+
+    @Param({"SPIRAL", "PYRAMID", "PHASE_CORRELATION"})
+    public SearchMode mode;
+
+    private RasterImg imgA;
+    private RasterImg imgB;
+    private Tracker tracker;
+    private SearchOptions options;
+
+    @Setup
+    public void setUp(){
+        imgA = SyntheticImages.texture(size, size, 1);
+        // true offset well inside the smallest gate
+        imgB = SyntheticImages.translated(imgA, 5, -3);
+        tracker = new Tracker(threads);
+        options = SearchOptions.spiral().setMode(mode);
+        float[] offset = appMotion();
+        if (offset == null || offset[0] != 5f || offset[1] != -3f){
+            throw new IllegalStateException(
+                    mode + " did not find the true offset"
+            );
+        }
+    }
+
+    @TearDown
+    public void tearDown(){
+        tracker.close();
+    }
+
+    @Benchmark
+    public float[] appMotion(){
+        return tracker.appMotion(imgA, imgB, gate, gate, options);
+    }
+}
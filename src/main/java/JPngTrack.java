@@ -1,11 +1,38 @@
+import img.FrameCache;
+import img.FrameSequence;
+import img.FrameSource;
 import img.Img;
+import img.MotionField;
+import img.MotionPredictor;
+import img.PairMotion;
+import img.SearchListener;
+import img.SearchOptions;
+import img.Tracker;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Class handling detection of apparent motion between images
  */
 public final class JPngTrack {
+    // shared by calls that do not pass a Tracker of their own
+    private static final Tracker defaultTracker = Tracker.common();
+    // frames decoded ahead of the pair being searched, by sequences
+    private static final int SEQUENCE_PREFETCH = 2;
+    // images read from paths are fetched from here when set
+    private static volatile FrameCache frameCache;
+
+    /**
+     * Returns the Tracker used by calls that are not passed one.
+     * @return Tracker
+     */
+    public static Tracker getDefaultTracker(){
+        return defaultTracker;
+    }
+
     /**
      * Method taking a pair of images, and returning the apparent
      * translation between the two.
@@ -46,15 +73,280 @@ public final class JPngTrack {
             float xGate,
             float yGate
     ) throws IOException{
-        Img imgA = Img.fromPath(pathA);
-        Img imgB = Img.fromPath(pathB);
-        // if either gate is zero, consider it (nearly) unlimited on that axis.
-        if (xGate == 0f){
-            xGate = (float)imgA.getWidth() - 1;
+        return translationFromPaths(
+                pathA, pathB, xGate, yGate, SearchOptions.spiral()
+        );
+    }
+
+    /**
+     * Method taking a pair of images, and returning the apparent
+     * translation between the two, found using the search
+     * strategy described by passed options.
+     * xGate and yGate behave as in
+     * translationFromPaths(String, String, float, float).
+     * @param pathA: String
+     * @param pathB: String
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @return float[]
+     */
+    public static float[] translationFromPaths(
+            String pathA,
+            String pathB,
+            float xGate,
+            float yGate,
+            SearchOptions options
+    ) throws IOException{
+        return translationFromPaths(
+                pathA, pathB, xGate, yGate, options, defaultTracker
+        );
+    }
+
+    /**
+     * Method taking a pair of images, and returning the apparent
+     * translation between the two, found by passed Tracker using
+     * the search strategy described by passed options.
+     * xGate and yGate behave as in
+     * translationFromPaths(String, String, float, float).
+     * @param pathA: String
+     * @param pathB: String
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @param tracker: Tracker
+     * @return float[]
+     */
+    public static float[] translationFromPaths(
+            String pathA,
+            String pathB,
+            float xGate,
+            float yGate,
+            SearchOptions options,
+            Tracker tracker
+    ) throws IOException{
+        Img imgA = decode(pathA, options.getListener());
+        Img imgB = decode(pathB, options.getListener());
+        float[] gates = Tracker.gates(imgA, xGate, yGate);
+        return tracker.appMotion(imgA, imgB, gates[0], gates[1], options);
+    }
+
+    /**
+     * Method taking a pair of images, and returning the apparent
+     * translation of each block of a grid covering them, for scenes
+     * with independently moving parts.
+     * xGate and yGate behave as in
+     * translationFromPaths(String, String, float, float).
+     * @param pathA: String
+     * @param pathB: String
+     * @param columns: int number of blocks across
+     * @param rows: int number of blocks down
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @return MotionField
+     */
+    public static MotionField motionFieldFromPaths(
+            String pathA,
+            String pathB,
+            int columns,
+            int rows,
+            float xGate,
+            float yGate,
+            SearchOptions options
+    ) throws IOException{
+        Img imgA = decode(pathA, options.getListener());
+        Img imgB = decode(pathB, options.getListener());
+        float[] gates = Tracker.gates(imgA, xGate, yGate);
+        return defaultTracker.motionField(
+                imgA, imgB, columns, rows, gates[0], gates[1], options
+        );
+    }
+
+    /**
+     * Method taking a batch of images, and passing the apparent
+     * translation of each relative to one reference image of the
+     * batch to results, as each is found.
+     * Each image is decoded once, and searches are shared between
+     * the workers of the default Tracker; see Tracker.matchPairs.
+     * xGate and yGate behave as in
+     * translationFromPaths(String, String, float, float).
+     * @param paths: List of String
+     * @param reference: int index of reference path
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @param results: Consumer of PairMotion, indexed by path
+     */
+    public static void translationsOneToMany(
+            List<String> paths,
+            int reference,
+            float xGate,
+            float yGate,
+            SearchOptions options,
+            Consumer<? super PairMotion> results
+    ) throws IOException{
+        List<Img> imgs = defaultTracker.readAll(paths, frameCache);
+        if (imgs.isEmpty()){
+            return;
         }
-        if (yGate == 0f){
-            yGate = (float)imgB.getHeight() - 1;
+        float[] gates = Tracker.gates(imgs.get(0), xGate, yGate);
+        defaultTracker.matchOneToMany(
+                imgs, reference, gates[0], gates[1], options, results
+        );
+    }
+
+    /**
+     * Method taking a batch of images, and passing the apparent
+     * translation between every two of them to results, as each is
+     * found. Each unordered pair is searched once; see
+     * Tracker.matchAllPairs.
+     * Behaves otherwise as translationsOneToMany.
+     * @param paths: List of String
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @param results: Consumer of PairMotion, indexed by path
+     */
+    public static void translationMatrix(
+            List<String> paths,
+            float xGate,
+            float yGate,
+            SearchOptions options,
+            Consumer<? super PairMotion> results
+    ) throws IOException{
+        List<Img> imgs = defaultTracker.readAll(paths, frameCache);
+        if (imgs.isEmpty()){
+            return;
         }
-        return imgA.appMotion(imgB, xGate, yGate);
+        float[] gates = Tracker.gates(imgs.get(0), xGate, yGate);
+        defaultTracker.matchAllPairs(
+                imgs, gates[0], gates[1], options, results
+        );
+    }
+
+    /**
+     * Method taking an ordered sequence of image paths, and
+     * returning an iterator over the apparent translation between
+     * each image and the one after it.
+     * Each image is decoded once, and upcoming images are decoded
+     * in the background while the current pair is compared.
+     * The returned sequence should be closed once no longer needed.
+     * xGate and yGate behave as in
+     * translationFromPaths(String, String, float, float).
+     * @param paths: Iterable of String
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @return FrameSequence yielding float[2] per consecutive pair
+     */
+    public static FrameSequence translationsFromPaths(
+            Iterable<String> paths,
+            float xGate,
+            float yGate,
+            SearchOptions options
+    ) throws IOException{
+        return new FrameSequence(
+                pathSource(paths),
+                xGate, yGate, options, defaultTracker, SEQUENCE_PREFETCH
+        );
+    }
+
+    /**
+     * Method taking an ordered sequence of image paths, and
+     * returning an iterator over the apparent translation between
+     * each image and the one after it, each search starting from
+     * the motion predicted by passed predictor.
+     * Behaves otherwise as
+     * translationsFromPaths(Iterable, float, float, SearchOptions).
+     * @param paths: Iterable of String
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @param predictor: MotionPredictor
+     * @return FrameSequence yielding float[2] per consecutive pair
+     */
+    public static FrameSequence translationsFromPaths(
+            Iterable<String> paths,
+            float xGate,
+            float yGate,
+            SearchOptions options,
+            MotionPredictor predictor
+    ) throws IOException{
+        return new FrameSequence(
+                pathSource(paths),
+                xGate, yGate, options, defaultTracker, SEQUENCE_PREFETCH,
+                predictor
+        );
+    }
+
+    /**
+     * Method taking a stream of consecutive PNG images, and
+     * returning an iterator over the apparent translation between
+     * each image and the one after it.
+     * Images are read from the stream as the iterator advances.
+     * xGate and yGate behave as in
+     * translationFromPaths(String, String, float, float).
+     * @param in: InputStream
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @return FrameSequence yielding float[2] per consecutive pair
+     */
+    public static FrameSequence translationsFromPngStream(
+            InputStream in,
+            float xGate,
+            float yGate,
+            SearchOptions options
+    ) throws IOException{
+        return new FrameSequence(
+                FrameSource.fromPngStream(in),
+                xGate, yGate, options, defaultTracker, SEQUENCE_PREFETCH
+        );
+    }
+
+    /**
+     * Sets cache that images read from paths by this class are
+     * fetched from, so that images compared repeatedly are decoded
+     * once. Caching is off until a cache is set.
+     * @param cache: FrameCache, or null to stop caching
+     */
+    public static void setFrameCache(FrameCache cache){
+        frameCache = cache;
+    }
+
+    public static FrameCache getFrameCache(){
+        return frameCache;
+    }
+
+    /**
+     * Decodes image at passed path, or fetches it from the frame
+     * cache if one is set, reporting the time taken to passed
+     * listener, if any.
+     * @param path: String
+     * @param listener: SearchListener or null
+     * @return Img
+     */
+    private static Img decode(String path, SearchListener listener)
+            throws IOException{
+        if (listener == null){
+            return read(path);
+        }
+        long start = System.nanoTime();
+        Img img = read(path);
+        listener.frameDecoded(System.nanoTime() - start);
+        return img;
+    }
+
+    private static Img read(String path) throws IOException{
+        FrameCache cache = frameCache;
+        return cache == null ? Img.fromPath(path) : cache.get(path);
+    }
+
+    private static FrameSource pathSource(Iterable<String> paths){
+        FrameCache cache = frameCache;
+        return cache == null ?
+                FrameSource.fromPaths(paths.iterator()) :
+                FrameSource.fromPaths(paths.iterator(), cache);
     }
 }
@@ -0,0 +1,493 @@
+import img.Comparison;
+import img.Img;
+import img.SearchMode;
+import img.SearchOptions;
+import img.Tracker;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Command line runner finding the apparent motion between each
+ * consecutive pair of frames of a directory, a list of paths, or a
+ * directory watched for incoming frames, in one long-lived JVM.
+ * Frames are decoded on decoder threads and pairs searched on
+ * searcher threads sharing one Tracker, so that decoding, searching
+ * and output of different pairs overlap. At most --queue pairs, so
+ * --queue + 1 frames, are in flight at once; reading further paths
+ * waits for earlier pairs to finish, so memory stays bounded when
+ * frames arrive faster than they are searched.
+ * Each pair is written to standard output as soon as it finishes,
+ * as one JSON object per line, which may be out of frame order:
+ * {"index":0,"a":"f0.png","b":"f1.png","x":29.0,"y":-26.0,"millis":4}
+ * Pairs that could not be decoded or searched have an "error" in
+ * place of x and y; x and y are null if no offset matched.
+ *
+ * Usage: java -jar jpngtrack-cli.jar [options] (--dir DIR |
+ *      --list FILE | --watch DIR)
+ */
+public final class JPngTrackCli {
+    private static final String USAGE = String.join("\n",
+            "Usage: java -jar jpngtrack-cli.jar [options] SOURCE",
+            "Sources:",
+            "  --dir DIR        frames of DIR, in order of file name",
+            "  --list FILE      frames listed one path per line in FILE,",
+            "                   or on standard input if FILE is -",
+            "  --watch DIR      frames of DIR, then frames moved into it,",
+            "                   in order of file name as they arrive",
+            "Options:",
+            "  --x-gate N       largest x motion; 0 for unlimited (default)",
+            "  --y-gate N       largest y motion; 0 for unlimited (default)",
+            "  --mode MODE      spiral (default), pyramid,",
+            "                   phase-correlation, exhaustive or features",
+            "  --luma           compare luma rather than RGB",
+            "  --sub-pixel      interpolate motion between whole pixels",
+            "  --threads N      Tracker workers (default: processors)",
+            "  --searchers N    pairs searched at once (default 2)",
+            "  --decoders N     frames decoded at once (default 2)",
+            "  --queue N        most pairs in flight (default 8)",
+            "  --idle SECONDS   stop watching after SECONDS without a",
+            "                   new frame; 0 to watch forever (default)"
+    );
+    private static final String FRAME_SUFFIX = ".png";
+
+    private float xGate = 0f;
+    private float yGate = 0f;
+    private final SearchOptions options = SearchOptions.spiral();
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int searchers = 2;
+    private int decoders = 2;
+    private int queue = 8;
+    private long idleSeconds = 0;
+    private String dir;
+    private String list;
+    private String watch;
+
+    private JPngTrackCli(){}
+
+    public static void main(String[] args){
+        int status;
+        try {
+            status = run(args, System.out);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            status = 2;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("jpngtrack: " + e.getMessage());
+            status = 1;
+        }
+        System.exit(status);
+    }
+
+    /**
+     * Runs with passed command line arguments, writing results to
+     * out, and returns once every pair has been written.
+     * @param args: String[]
+     * @param out: PrintStream
+     * @return int exit status: 0 if every pair was searched,
+     *      1 if any failed
+     * @throws IllegalArgumentException: On invalid arguments
+     * @throws IOException: On failure to list or watch the source
+     */
+    static int run(String[] args, PrintStream out) throws IOException {
+        JPngTrackCli cli = new JPngTrackCli();
+        cli.parse(args);
+        return cli.process(cli.paths(), out);
+    }
+
+    private void parse(String[] args){
+        for (int i = 0; i < args.length; i++){
+            String arg = args[i];
+            switch (arg){
+                case "--luma":
+                    options.setComparison(Comparison.LUMA);
+                    continue;
+                case "--sub-pixel":
+                    options.setSubPixel(true);
+                    continue;
+                default:
+                    break;
+            }
+            if (i + 1 >= args.length){
+                throw new IllegalArgumentException(
+                        "Missing value, or unknown option: " + arg
+                );
+            }
+            String value = args[++i];
+            switch (arg){
+                case "--dir":
+                    dir = value;
+                    break;
+                case "--list":
+                    list = value;
+                    break;
+                case "--watch":
+                    watch = value;
+                    break;
+                case "--x-gate":
+                    xGate = Float.parseFloat(value);
+                    break;
+                case "--y-gate":
+                    yGate = Float.parseFloat(value);
+                    break;
+                case "--mode":
+                    options.setMode(SearchMode.valueOf(
+                            value.toUpperCase(Locale.ROOT).replace('-', '_')
+                    ));
+                    break;
+                case "--threads":
+                    threads = positive(arg, value);
+                    break;
+                case "--searchers":
+                    searchers = positive(arg, value);
+                    break;
+                case "--decoders":
+                    decoders = positive(arg, value);
+                    break;
+                case "--queue":
+                    queue = positive(arg, value);
+                    break;
+                case "--idle":
+                    idleSeconds = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException(
+                            "Unknown option: " + arg
+                    );
+            }
+        }
+        int sources = (dir == null ? 0 : 1) + (list == null ? 0 : 1) +
+                (watch == null ? 0 : 1);
+        if (sources != 1){
+            throw new IllegalArgumentException(
+                    "Exactly one of --dir, --list and --watch must be passed"
+            );
+        }
+    }
+
+    private static int positive(String option, String value){
+        int n = Integer.parseInt(value);
+        if (n < 1){
+            throw new IllegalArgumentException(
+                    option + " must be at least 1: " + n
+            );
+        }
+        return n;
+    }
+
+    /**
+     * Returns paths of frames of the source passed, in frame order.
+     * @return Iterator of String
+     */
+    private Iterator<String> paths() throws IOException {
+        if (dir != null){
+            return framesOf(Paths.get(dir)).iterator();
+        }
+        if (watch != null){
+            return new WatchedFrames(Paths.get(watch), idleSeconds);
+        }
+        Stream<String> lines;
+        if (list.equals("-")){
+            // lines are read as frames are needed, so a list may be
+            // written to standard input while it is processed.
+            lines = new BufferedReader(new InputStreamReader(
+                    System.in, StandardCharsets.UTF_8
+            )).lines();
+        } else {
+            // a list file is read whole, so it is closed at once
+            lines = Files.readAllLines(
+                    Paths.get(list), StandardCharsets.UTF_8
+            ).stream();
+        }
+        return lines.map(String::trim)
+                .filter(line -> !line.isEmpty())
+                .iterator();
+    }
+
+    /**
+     * Returns paths of the frames currently in a directory, sorted
+     * by file name.
+     * @param directory: Path
+     * @return List of String
+     */
+    private static List<String> framesOf(Path directory) throws IOException {
+        List<String> frames = new ArrayList<>();
+        try (Stream<Path> entries = Files.list(directory)){
+            entries.filter(JPngTrackCli::isFrame)
+                    .forEach(path -> frames.add(path.toString()));
+        }
+        Collections.sort(frames);
+        return frames;
+    }
+
+    private static boolean isFrame(Path path){
+        return path.getFileName().toString()
+                .toLowerCase(Locale.ROOT).endsWith(FRAME_SUFFIX) &&
+                Files.isRegularFile(path);
+    }
+
+    /**
+     * Decodes and searches consecutive pairs of passed frames.
+     * Each pair holds a permit of the queue from before its second
+     * frame is decoded until it has been written. The first frame
+     * begins no pair, so takes no permit.
+     * @param paths: Iterator of String
+     * @param out: PrintStream
+     * @return int exit status
+     */
+    private int process(Iterator<String> paths, PrintStream out){
+        ExecutorService decodePool = Executors.newFixedThreadPool(
+                decoders, daemon("jpngtrack decoder")
+        );
+        ExecutorService searchPool = Executors.newFixedThreadPool(
+                searchers, daemon("jpngtrack searcher")
+        );
+        Semaphore inFlight = new Semaphore(queue);
+        AtomicInteger failures = new AtomicInteger();
+        List<CompletableFuture<Void>> pairs = new ArrayList<>();
+        try (Tracker tracker = new Tracker(threads)){
+            String previousPath = null;
+            CompletableFuture<Img> previous = null;
+            int index = 0;
+            while (paths.hasNext()){
+                String path = paths.next();
+                if (previous != null){
+                    inFlight.acquireUninterruptibly();
+                }
+                CompletableFuture<Img> frame = CompletableFuture.supplyAsync(
+                        () -> decode(path), decodePool
+                );
+                if (previous != null){
+                    pairs.add(pair(
+                            index++, previousPath, path, previous, frame,
+                            tracker, searchPool, out, failures
+                    ).whenComplete((result, e) -> inFlight.release()));
+                    // drop finished pairs so that a watched source
+                    // running for days does not grow this list
+                    pairs.removeIf(CompletableFuture::isDone);
+                }
+                previousPath = path;
+                previous = frame;
+            }
+            for (CompletableFuture<Void> pair : pairs){
+                pair.join();
+            }
+        } finally {
+            decodePool.shutdownNow();
+            searchPool.shutdownNow();
+        }
+        out.flush();
+        return failures.get() == 0 ? 0 : 1;
+    }
+
+    /**
+     * Returns future searching a pair once both of its frames are
+     * decoded, and writing its result line.
+     */
+    private CompletableFuture<Void> pair(
+            int index,
+            String pathA,
+            String pathB,
+            CompletableFuture<Img> frameA,
+            CompletableFuture<Img> frameB,
+            Tracker tracker,
+            ExecutorService searchPool,
+            PrintStream out,
+            AtomicInteger failures
+    ){
+        return frameA.thenCombineAsync(frameB, (imgA, imgB) -> {
+            long start = System.nanoTime();
+            float[] gates = Tracker.gates(imgA, xGate, yGate);
+            float[] motion = tracker.appMotion(
+                    imgA, imgB, gates[0], gates[1], options
+            );
+            long millis = TimeUnit.NANOSECONDS.toMillis(
+                    System.nanoTime() - start
+            );
+            return String.format(Locale.ROOT,
+                    "{\"index\":%d,\"a\":%s,\"b\":%s,\"x\":%s,\"y\":%s," +
+                            "\"millis\":%d}",
+                    index, quote(pathA), quote(pathB),
+                    motion == null ? "null" : Float.toString(motion[0]),
+                    motion == null ? "null" : Float.toString(motion[1]),
+                    millis
+            );
+        }, searchPool).exceptionally(e -> {
+            failures.incrementAndGet();
+            Throwable cause = e instanceof CompletionException &&
+                    e.getCause() != null ? e.getCause() : e;
+            return String.format(Locale.ROOT,
+                    "{\"index\":%d,\"a\":%s,\"b\":%s,\"error\":%s}",
+                    index, quote(pathA), quote(pathB),
+                    quote(String.valueOf(cause.getMessage()))
+            );
+        }).thenAccept(line -> {
+            synchronized (out){
+                out.println(line);
+                out.flush();
+            }
+        });
+    }
+
+    private static Img decode(String path){
+        try {
+            return Img.fromPath(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(path + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns passed string as a JSON string literal.
+     * @param s: String
+     * @return String
+     */
+    static String quote(String s){
+        StringBuilder quoted = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++){
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\'){
+                quoted.append('\\').append(c);
+            } else if (c < 0x20){
+                quoted.append(String.format("\\u%04x", (int)c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static ThreadFactory daemon(String name){
+        return r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Paths of the frames in a directory, followed by those of frames
+     * created in or moved into it, in order of file name.
+     * Frames are expected to arrive in order of file name, as from a
+     * capture process numbering them; one named before the latest
+     * frame already queued is skipped. Frames should be moved in once
+     * complete, such as by renaming them from a name without the
+     * frame suffix, so that none is read while still being written.
+     * Should the watch service drop events, the directory is listed
+     * again and frames after the latest one queued are taken from it.
+     */
+    private static final class WatchedFrames implements Iterator<String> {
+        private final Path directory;
+        private final long idleSeconds;
+        private final WatchService watcher;
+        private final Deque<String> ready = new ArrayDeque<>();
+        private String latest = "";  // name of the latest frame queued
+
+        WatchedFrames(Path directory, long idleSeconds) throws IOException {
+            this.directory = directory;
+            this.idleSeconds = idleSeconds;
+            watcher = FileSystems.getDefault().newWatchService();
+            // register before listing, so no frame falls between them;
+            // a frame seen by both is only queued once.
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+            queue(framesOf(directory));
+        }
+
+        @Override
+        public boolean hasNext(){
+            try {
+                while (ready.isEmpty()){
+                    WatchKey key = idleSeconds > 0 ?
+                            watcher.poll(idleSeconds, TimeUnit.SECONDS) :
+                            watcher.take();
+                    if (key == null){
+                        watcher.close();
+                        return false; // idle for too long
+                    }
+                    List<String> arrived = new ArrayList<>();
+                    boolean overflowed = false;
+                    for (WatchEvent<?> event : key.pollEvents()){
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW){
+                            overflowed = true; // events were lost
+                        } else if (event.context() instanceof Path){
+                            Path path =
+                                    directory.resolve((Path)event.context());
+                            if (isFrame(path)){
+                                arrived.add(path.toString());
+                            }
+                        }
+                    }
+                    key.reset();
+                    if (overflowed){
+                        // list the directory again for the frames
+                        // whose events were dropped
+                        arrived = framesOf(directory);
+                    }
+                    Collections.sort(arrived);
+                    queue(arrived);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ClosedWatchServiceException e) {
+                return false;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        }
+
+        @Override
+        public String next(){
+            if (!hasNext()){
+                throw new NoSuchElementException();
+            }
+            return ready.poll();
+        }
+
+        /**
+         * Queues passed frames, sorted by name, that follow the
+         * latest frame queued.
+         * @param frames: List of String
+         */
+        private void queue(List<String> frames){
+            for (String frame : frames){
+                if (frame.compareTo(latest) > 0){
+                    ready.add(frame);
+                    latest = frame;
+                }
+            }
+        }
+    }
+}
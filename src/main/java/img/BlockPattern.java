@@ -0,0 +1,33 @@
+package img;
+
+/**
+ * Patterns in which block motion searches step from their starting
+ * offset towards the best match of each block.
+ */
+public enum BlockPattern {
+    /**
+     * diamond search: steps by a nine-point diamond of radius 2
+     * until its center is best, then checks the four neighbours
+     */
+    DIAMOND(
+            new int[] {2, 0, 1, 1, 0, 2, -1, 1, -2, 0, -1, -1, 0, -2, 1, -1}
+    ),
+    /**
+     * hexagon search: steps by a seven-point hexagon, which needs
+     * fewer points per step than the diamond for similar reach,
+     * then checks the four neighbours
+     */
+    HEXAGON(
+            new int[] {2, 0, 1, 2, -1, 2, -2, 0, -1, -2, 1, -2}
+    );
+
+    // neighbours checked once the large pattern has converged
+    static final int[] SMALL_PATTERN = {1, 0, 0, 1, -1, 0, 0, -1};
+
+    // points around the center of the large pattern, as x, y pairs
+    final int[] largePattern;
+
+    BlockPattern(int[] largePattern){
+        this.largePattern = largePattern;
+    }
+}
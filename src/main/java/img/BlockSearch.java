@@ -0,0 +1,148 @@
+package img;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.Math.abs;
+
+/**
+ * Search for the motion of each block of a grid covering two
+ * images. Threads sharing the search take whole blocks at a time;
+ * each block is searched with a BlockPattern, stepping from the
+ * start offset towards its best match.
+ */
+final class BlockSearch extends SharedWork {
+    private final Img imgA;
+    private final Img imgB;
+    private final int columns;
+    private final int rows;
+    private final int xStart, yStart;
+    private final int xGate, yGate;
+    private final int[] largePattern;
+    private final Comparison comparison;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final float[] vectors;
+    private final float[] scores;
+
+    /**
+     * Creates search of a columns x rows grid of blocks.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param columns: int
+     * @param rows: int
+     * @param xStart: int offset each block starts searching from
+     * @param yStart: int
+     * @param xGate: int
+     * @param yGate: int
+     * @param pattern: BlockPattern
+     * @param comparison: Comparison
+     */
+    BlockSearch(
+            Img imgA,
+            Img imgB,
+            int columns,
+            int rows,
+            int xStart,
+            int yStart,
+            int xGate,
+            int yGate,
+            BlockPattern pattern,
+            Comparison comparison
+    ){
+        this.imgA = imgA;
+        this.imgB = imgB;
+        this.columns = columns;
+        this.rows = rows;
+        this.xStart = xStart;
+        this.yStart = yStart;
+        this.xGate = xGate;
+        this.yGate = yGate;
+        largePattern = pattern.largePattern;
+        this.comparison = comparison;
+        vectors = new float[2 * columns * rows];
+        scores = new float[columns * rows];
+    }
+
+    /**
+     * Returns the motion field found. Only valid once every thread
+     * working on the search has finished.
+     * @return MotionField
+     */
+    MotionField result(){
+        return new MotionField(columns, rows, vectors, scores);
+    }
+
+    @Override
+    void work(){
+        int index;
+        while ((index = cursor.getAndIncrement()) < columns * rows){
+            searchBlock(index);
+        }
+    }
+
+    /**
+     * Steps the large pattern from the start offset until its
+     * center is best, then checks the small pattern around it.
+     * @param index: int row-major index of block
+     */
+    private void searchBlock(int index){
+        int column = index % columns;
+        int row = index / columns;
+        int width = imgB.getWidth();
+        int height = imgB.getHeight();
+        int x0 = (int)((long)width * column / columns);
+        int x1 = (int)((long)width * (column + 1) / columns);
+        int y0 = (int)((long)height * row / rows);
+        int y1 = (int)((long)height * (row + 1) / rows);
+        int x = xStart;
+        int y = yStart;
+        float best = imgA.diffInRegion(
+                imgB, x0, y0, x1, y1, x, y, 1f, comparison, false, null
+        );
+        boolean moved = true;
+        while (moved){
+            moved = false;
+            int xCenter = x;
+            int yCenter = y;
+            for (int i = 0; i < largePattern.length; i += 2){
+                int xCandidate = xCenter + largePattern[i];
+                int yCandidate = yCenter + largePattern[i + 1];
+                if (abs(xCandidate) > xGate || abs(yCandidate) > yGate){
+                    continue;
+                }
+                float diff = imgA.diffInRegion(
+                        imgB, x0, y0, x1, y1, xCandidate, yCandidate, best,
+                        comparison, false, null
+                );
+                // strict improvement only, so the walk always ends
+                if (diff < best){
+                    best = diff;
+                    x = xCandidate;
+                    y = yCandidate;
+                    moved = true;
+                }
+            }
+        }
+        int xCenter = x;
+        int yCenter = y;
+        int[] small = BlockPattern.SMALL_PATTERN;
+        for (int i = 0; i < small.length; i += 2){
+            int xCandidate = xCenter + small[i];
+            int yCandidate = yCenter + small[i + 1];
+            if (abs(xCandidate) > xGate || abs(yCandidate) > yGate){
+                continue;
+            }
+            float diff = imgA.diffInRegion(
+                    imgB, x0, y0, x1, y1, xCandidate, yCandidate, best,
+                    comparison, false, null
+            );
+            if (diff < best){
+                best = diff;
+                x = xCandidate;
+                y = yCandidate;
+            }
+        }
+        vectors[2 * index] = x;
+        vectors[2 * index + 1] = y;
+        scores[index] = best;
+    }
+}
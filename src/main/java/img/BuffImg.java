@@ -7,6 +7,7 @@ import javax.imageio.ImageIO;
 
 class BuffImg extends Img {
     private BufferedImage imgSource;
+    private volatile int[] rgb; // packed raster, decoded on first use
 
     private BuffImg(BufferedImage imgSource){
         this.imgSource = imgSource;
@@ -30,6 +31,18 @@ class BuffImg extends Img {
         return imgSource.getHeight();
     }
 
+    int[] rgbRaster() {
+        int[] raster = rgb;
+        if (raster == null){
+            // decoding twice from racing threads is harmless;
+            // both produce identical rasters.
+            int w = imgSource.getWidth();
+            int h = imgSource.getHeight();
+            raster = rgb = imgSource.getRGB(0, 0, w, h, null, 0, w);
+        }
+        return raster;
+    }
+
     public IPixelIterable offsetPixels(int xOffset, int yOffset) {
         validateOffsets(xOffset, yOffset);
         return new Pixels(imgSource, xOffset, yOffset);
@@ -0,0 +1,205 @@
+package img;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Img reading pixels straight from a byte buffer owned by the
+ * caller, such as a frame from a capture pipeline or a mapped raw
+ * file, without copying it.
+ * Searches convert the rows they compare to packed RGB as they go,
+ * through copyRow. Only operations that need the whole image at
+ * once, such as building pyramids, build a packed copy, and keep it.
+ * Heap buffers are read through their backing array; other buffers
+ * through absolute gets, so the position of the buffer is never
+ * changed.
+ */
+final class BufferImg extends Img {
+    private final ByteBuffer buffer;
+    private final byte[] array;     // backing array, or null
+    private final int base;         // index of first byte of pixel (0, 0)
+    private final int width;
+    private final int height;
+    private final int stride;       // bytes from one row to the next
+    private final PixelFormat format;
+    private volatile int[] raster;  // packed copy, built on request
+
+    /**
+     * Wraps passed buffer, from its current position.
+     * @param buffer: ByteBuffer
+     * @param width: int
+     * @param height: int
+     * @param stride: int bytes from the start of one row to the next
+     * @param format: PixelFormat
+     */
+    BufferImg(
+            ByteBuffer buffer,
+            int width,
+            int height,
+            int stride,
+            PixelFormat format
+    ){
+        if (width < 1 || height < 1 || stride < width * format.bytesPerPixel){
+            throw new IllegalArgumentException(String.format(
+                    "Invalid image layout. Size: %s, %s  Stride: %s  " +
+                            "Format: %s",
+                    width, height, stride, format
+            ));
+        }
+        long needed = (long)(height - 1) * stride +
+                (long)width * format.bytesPerPixel;
+        if (buffer.remaining() < needed){
+            throw new IllegalArgumentException(String.format(
+                    "Buffer holds %s bytes; image needs %s",
+                    buffer.remaining(), needed
+            ));
+        }
+        this.buffer = buffer;
+        this.width = width;
+        this.height = height;
+        this.stride = stride;
+        this.format = format;
+        if (buffer.hasArray()){
+            array = buffer.array();
+            base = buffer.arrayOffset() + buffer.position();
+        } else {
+            array = null;
+            base = buffer.position();
+        }
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    @Override
+    boolean hasRaster(){
+        return false;
+    }
+
+    @Override
+    int[] rgbRaster(){
+        int[] rgb = raster;
+        if (rgb == null){
+            // as with sums, racing threads build identical copies
+            rgb = new int[width * height];
+            for (int y = 0; y < height; y++){
+                copyRow(0, y, width, rgb, y * width);
+            }
+            raster = rgb;
+        }
+        return rgb;
+    }
+
+    @Override
+    void copyRow(int x, int y, int length, int[] dst, int dstIndex){
+        int index = base + y * stride + x * format.bytesPerPixel;
+        if (array != null){
+            copyFromArray(index, length, dst, dstIndex);
+        } else {
+            copyFromBuffer(index, length, dst, dstIndex);
+        }
+    }
+
+    public IPixelIterable offsetPixels(int xOffset, int yOffset){
+        return new RasterImg(width, height, rgbRaster())
+                .offsetPixels(xOffset, yOffset);
+    }
+
+    private void copyFromArray(int index, int length, int[] dst, int dstIndex){
+        byte[] src = array;
+        int end = dstIndex + length;
+        switch (format){
+            case RGB:
+                for (int i = dstIndex; i < end; i++, index += 3){
+                    dst[i] = pack(src[index], src[index + 1], src[index + 2]);
+                }
+                break;
+            case BGR:
+                for (int i = dstIndex; i < end; i++, index += 3){
+                    dst[i] = pack(src[index + 2], src[index + 1], src[index]);
+                }
+                break;
+            case RGBA:
+                for (int i = dstIndex; i < end; i++, index += 4){
+                    dst[i] = pack(src[index], src[index + 1], src[index + 2]);
+                }
+                break;
+            case BGRA:
+                for (int i = dstIndex; i < end; i++, index += 4){
+                    dst[i] = pack(src[index + 2], src[index + 1], src[index]);
+                }
+                break;
+            case ARGB:
+                for (int i = dstIndex; i < end; i++, index += 4){
+                    dst[i] = pack(
+                            src[index + 1], src[index + 2], src[index + 3]
+                    );
+                }
+                break;
+            default:
+                for (int i = dstIndex; i < end; i++, index++){
+                    dst[i] = pack(src[index], src[index], src[index]);
+                }
+        }
+    }
+
+    private void copyFromBuffer(int index, int length, int[] dst, int dstIndex){
+        ByteBuffer src = buffer;
+        int end = dstIndex + length;
+        switch (format){
+            case RGB:
+                for (int i = dstIndex; i < end; i++, index += 3){
+                    dst[i] = pack(
+                            src.get(index), src.get(index + 1),
+                            src.get(index + 2)
+                    );
+                }
+                break;
+            case BGR:
+                for (int i = dstIndex; i < end; i++, index += 3){
+                    dst[i] = pack(
+                            src.get(index + 2), src.get(index + 1),
+                            src.get(index)
+                    );
+                }
+                break;
+            case RGBA:
+                for (int i = dstIndex; i < end; i++, index += 4){
+                    dst[i] = pack(
+                            src.get(index), src.get(index + 1),
+                            src.get(index + 2)
+                    );
+                }
+                break;
+            case BGRA:
+                for (int i = dstIndex; i < end; i++, index += 4){
+                    dst[i] = pack(
+                            src.get(index + 2), src.get(index + 1),
+                            src.get(index)
+                    );
+                }
+                break;
+            case ARGB:
+                for (int i = dstIndex; i < end; i++, index += 4){
+                    dst[i] = pack(
+                            src.get(index + 1), src.get(index + 2),
+                            src.get(index + 3)
+                    );
+                }
+                break;
+            default:
+                for (int i = dstIndex; i < end; i++, index++){
+                    byte luma = src.get(index);
+                    dst[i] = pack(luma, luma, luma);
+                }
+        }
+    }
+
+    private static int pack(byte r, byte g, byte b){
+        return 0xFF000000 | (r & 0xFF) << 16 | (g & 0xFF) << 8 | (b & 0xFF);
+    }
+}
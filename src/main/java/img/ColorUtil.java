@@ -22,6 +22,128 @@ final class ColorUtil {
         return (float)diffSum / 765; // diffSum/(255*3) == average diff
     }
 
+    /**
+     * Returns sum of absolute red, green and blue differences
+     * between length consecutive pixels of a and of b.
+     * Dividing by 765 * length gives the average of compareRGB over
+     * the same pixels. The loop is unrolled over four independent
+     * sums so consecutive pixels do not wait on each other.
+     * @param a: int[] packed RGB values
+     * @param aIndex: int index of first pixel in a
+     * @param b: int[] packed RGB values
+     * @param bIndex: int index of first pixel in b
+     * @param length: int number of pixels, below 2^21
+     * @return int
+     */
+    static int sumAbsDiffRGB(
+            int[] a,
+            int aIndex,
+            int[] b,
+            int bIndex,
+            int length
+    ){
+        int sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4){
+            sum0 += absDiffRGB(a[aIndex + i], b[bIndex + i]);
+            sum1 += absDiffRGB(a[aIndex + i + 1], b[bIndex + i + 1]);
+            sum2 += absDiffRGB(a[aIndex + i + 2], b[bIndex + i + 2]);
+            sum3 += absDiffRGB(a[aIndex + i + 3], b[bIndex + i + 3]);
+        }
+        for (; i < length; i++){
+            sum0 += absDiffRGB(a[aIndex + i], b[bIndex + i]);
+        }
+        return sum0 + sum1 + sum2 + sum3;
+    }
+
+    /**
+     * Returns sum of absolute differences between two runs of
+     * length luma values, one byte per pixel, unsigned.
+     * @param a: byte[] luma values
+     * @param aIndex: int index of first pixel in a
+     * @param b: byte[] luma values
+     * @param bIndex: int index of first pixel in b
+     * @param length: int number of pixels, below 2^23
+     * @return int
+     */
+    static int sumAbsDiffLuma(
+            byte[] a,
+            int aIndex,
+            byte[] b,
+            int bIndex,
+            int length
+    ){
+        int sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4){
+            sum0 += absDiffLuma(a[aIndex + i], b[bIndex + i]);
+            sum1 += absDiffLuma(a[aIndex + i + 1], b[bIndex + i + 1]);
+            sum2 += absDiffLuma(a[aIndex + i + 2], b[bIndex + i + 2]);
+            sum3 += absDiffLuma(a[aIndex + i + 3], b[bIndex + i + 3]);
+        }
+        for (; i < length; i++){
+            sum0 += absDiffLuma(a[aIndex + i], b[bIndex + i]);
+        }
+        return sum0 + sum1 + sum2 + sum3;
+    }
+
+    /**
+     * Returns sum of absolute differences between the luma of two
+     * runs of length packed RGB values, for rows that have no luma
+     * plane built for them.
+     * @param a: int[] packed RGB values
+     * @param aIndex: int index of first pixel in a
+     * @param b: int[] packed RGB values
+     * @param bIndex: int index of first pixel in b
+     * @param length: int number of pixels, below 2^23
+     * @return int
+     */
+    static int sumAbsDiffLuma(
+            int[] a,
+            int aIndex,
+            int[] b,
+            int bIndex,
+            int length
+    ){
+        int sum = 0;
+        for (int i = 0; i < length; i++){
+            sum += abs(luma(a[aIndex + i]) - luma(b[bIndex + i]));
+        }
+        return sum;
+    }
+
+    /**
+     * Returns absolute difference between two unsigned luma values
+     * @param a: byte
+     * @param b: byte
+     * @return int from 0 to 255 inclusive.
+     */
+    static int absDiffLuma(byte a, byte b){
+        return abs((a & 0xFF) - (b & 0xFF));
+    }
+
+    /**
+     * Returns sum of absolute red, green and blue differences
+     * between two pixel RGB values
+     * @param aRGB: int
+     * @param bRGB: int
+     * @return int from 0 to 765 inclusive.
+     */
+    static int absDiffRGB(int aRGB, int bRGB){
+        return abs(r(aRGB) - r(bRGB)) +
+                abs(g(aRGB) - g(bRGB)) +
+                abs(b(aRGB) - b(bRGB));
+    }
+
+    /**
+     * Returns luma of an RGB value, weighted as in ITU-R BT.601
+     * @param color: int
+     * @return int from 0 to 255 inclusive.
+     */
+    static int luma(int color){
+        return (77 * r(color) + 150 * g(color) + 29 * b(color)) >> 8;
+    }
+
     static int r(int color){
         return (color >> 16) & 0xFF;
     }
@@ -0,0 +1,24 @@
+package img;
+
+/**
+ * Pixel values compared by spatial searches, selected per call
+ * with SearchOptions.setComparison.
+ */
+public enum Comparison {
+    /**
+     * red, green and blue channels of each pixel; detects every
+     * difference between images
+     */
+    RGB,
+    /**
+     * luma of each pixel, weighted as in ITU-R BT.601 and held in
+     * one byte per pixel, built once per image. Reads a quarter of
+     * the memory of RGB comparisons per offset, so more of the
+     * overlap stays in cache. Differences of hue at equal brightness
+     * are not seen, so for colour footage it may rank offsets
+     * differently from RGB; for grey and near-grey footage it finds
+     * the same offsets. Scores are scaled to the same 0 to 1 range
+     * as RGB scores. Channel sums are not used to skip offsets.
+     */
+    LUMA
+}
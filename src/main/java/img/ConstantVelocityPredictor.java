@@ -0,0 +1,85 @@
+package img;
+
+/**
+ * MotionPredictor expecting each pair of frames to move as much as
+ * the pair before it.
+ * The search radius follows the largest prediction error among the
+ * most recent pairs, so it tightens while motion is steady and
+ * widens again when it changes.
+ */
+public final class ConstantVelocityPredictor implements MotionPredictor {
+    private final int minRadius;
+    private final float errorMargin;
+    // recent absolute prediction errors, as x, y pairs, in a ring
+    private final float[] errors;
+    private int nErrors;
+    private int nextError;
+    private float[] last;
+
+    /**
+     * Creates predictor judging radius from the last 8 errors, with
+     * a margin of twice the largest and at least 2 pixels.
+     */
+    public ConstantVelocityPredictor(){
+        this(8, 2, 2f);
+    }
+
+    /**
+     * Creates predictor. Until history errors have been seen, the
+     * whole gate is searched.
+     * @param history: int number of recent errors considered, at least 1
+     * @param minRadius: int smallest search radius, at least 1
+     * @param errorMargin: float factor applied to the largest error
+     */
+    public ConstantVelocityPredictor(
+            int history,
+            int minRadius,
+            float errorMargin
+    ){
+        if (history < 1 || minRadius < 1){
+            throw new IllegalArgumentException(String.format(
+                    "history and minRadius must be at least 1: %s, %s",
+                    history, minRadius
+            ));
+        }
+        this.minRadius = minRadius;
+        this.errorMargin = errorMargin;
+        errors = new float[2 * history];
+    }
+
+    @Override
+    public synchronized float[] predict(){
+        return last == null ? null : last.clone();
+    }
+
+    @Override
+    public synchronized int[] searchRadius(){
+        if (nErrors < errors.length / 2){
+            return null; // too little history to trust
+        }
+        float xError = 0f;
+        float yError = 0f;
+        for (int i = 0; i < errors.length; i += 2){
+            xError = Math.max(xError, errors[i]);
+            yError = Math.max(yError, errors[i + 1]);
+        }
+        return new int[] {
+                minRadius + (int)Math.ceil(xError * errorMargin),
+                minRadius + (int)Math.ceil(yError * errorMargin)
+        };
+    }
+
+    @Override
+    public synchronized void observe(float[] motion){
+        if (motion == null){
+            return;
+        }
+        if (last != null){
+            errors[nextError] = Math.abs(motion[0] - last[0]);
+            errors[nextError + 1] = Math.abs(motion[1] - last[1]);
+            nextError = (nextError + 2) % errors.length;
+            nErrors = Math.min(nErrors + 1, errors.length / 2);
+        }
+        last = motion.clone();
+    }
+}
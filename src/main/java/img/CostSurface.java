@@ -0,0 +1,286 @@
+package img;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.Arrays;
+
+/**
+ * Diff at every offset within the gates of two images, as found by
+ * Tracker.costSurface. Offset (x, y) has the score diffAtOffset
+ * gives it, from -xGate to xGate and -yGate to yGate inclusive.
+ * Every offset is summed over its whole overlap, so filling a
+ * surface costs as many pixel differences as scoring each offset on
+ * its own, about (2 xGate + 1) (2 yGate + 1) times the image area:
+ * no two offsets pair the same pixels, so absolute differences give
+ * no partial sums to share between them. Rows are ordered so that
+ * each pair of image rows is read once, which saves memory traffic,
+ * not differences.
+ * Scores are kept in a flat primitive array, row-major; offsets a
+ * stopped search did not reach score NaN.
+ */
+public final class CostSurface {
+    private final int xGate;
+    private final int yGate;
+    private final float[] scores;
+
+    CostSurface(int xGate, int yGate){
+        this.xGate = xGate;
+        this.yGate = yGate;
+        this.scores = new float[(2 * xGate + 1) * (2 * yGate + 1)];
+        Arrays.fill(scores, Float.NaN);
+    }
+
+    public int getXGate(){
+        return xGate;
+    }
+
+    public int getYGate(){
+        return yGate;
+    }
+
+    /**
+     * Returns diff at an offset, as a fraction of the largest
+     * possible difference.
+     * @param x: int from -xGate to xGate
+     * @param y: int from -yGate to yGate
+     * @return float from 0 to 1 inclusive, or NaN if not scored
+     */
+    public float getScore(int x, int y){
+        return scores[index(x, y)];
+    }
+
+    /**
+     * Returns offset with the least diff. Of equal diffs, the one a
+     * spiral search reaches first is returned, so that both modes
+     * agree on ties; see SpiralCoordinates.
+     * @return float[2] (x, y) or null if no offset was scored
+     */
+    public float[] getMotion(){
+        int best = bestIndex();
+        return best < 0 ? null : offset(best);
+    }
+
+    /**
+     * Returns diff at getMotion().
+     * @return float, or NaN if no offset was scored
+     */
+    public float getBestScore(){
+        int best = bestIndex();
+        return best < 0 ? Float.NaN : scores[best];
+    }
+
+    /**
+     * Returns least diff of any local minimum of the surface outside
+     * the 3 x 3 neighbourhood of getMotion(): the best alternative
+     * match, such as the next repeat of a periodic texture.
+     * @return float, or NaN if there is no other local minimum
+     */
+    public float getRunnerUpScore(){
+        int best = bestIndex();
+        if (best < 0){
+            return Float.NaN;
+        }
+        int width = 2 * xGate + 1;
+        int bestX = best % width;
+        int bestY = best / width;
+        float runnerUp = Float.NaN;
+        for (int i = 0; i < scores.length; i++){
+            int x = i % width;
+            int y = i / width;
+            if (Math.abs(x - bestX) <= 1 && Math.abs(y - bestY) <= 1){
+                continue;
+            }
+            if (isLocalMinimum(x, y) && !(scores[i] >= runnerUp)){
+                runnerUp = scores[i];
+            }
+        }
+        return runnerUp;
+    }
+
+    /**
+     * Returns how nearly another offset matches as well as the best:
+     * getBestScore() / getRunnerUpScore(). Near 1 where the images
+     * match about as well at two separate offsets, as with periodic
+     * textures, so that the motion found is unreliable; near 0 for a
+     * single distinct match.
+     * @return float from 0 to 1 inclusive, 0 if there is no
+     *      runner-up
+     */
+    public float getAmbiguity(){
+        float runnerUp = getRunnerUpScore();
+        if (Float.isNaN(runnerUp)){
+            return 0f;
+        }
+        return runnerUp > 0 ? getBestScore() / runnerUp : 1f;
+    }
+
+    /**
+     * Returns copy of all scores, row-major from offset
+     * (-xGate, -yGate).
+     * @return float[(2 * xGate + 1) * (2 * yGate + 1)]
+     */
+    public float[] toArray(){
+        return scores.clone();
+    }
+
+    /**
+     * Scores every offset of the surface row at yOffset.
+     * Each pair of rows the offsets of this row compare, one of
+     * imgB and the one yOffset below it in imgA, is read once and
+     * compared at every x offset while it is in cache, rather than
+     * read again for each offset. Tiled Imgs are read a row at a
+     * time through copyRow.
+     * @param imgA: Img
+     * @param imgB: Img of the same size
+     * @param yOffset: int from -yGate to yGate
+     * @param comparison: Comparison
+     * @param tally: SearchRecorder.Tally or null to count nothing
+     */
+    void scoreRow(
+            Img imgA,
+            Img imgB,
+            int yOffset,
+            Comparison comparison,
+            SearchRecorder.Tally tally
+    ){
+        int width = imgA.getWidth();
+        int height = imgA.getHeight();
+        int nX = 2 * xGate + 1;
+        int base = (yOffset + yGate) * nX;
+        // rows of imgB that overlap imgA at this y offset
+        int yStart = max(0, -yOffset);
+        int yEnd = min(height, height - yOffset);
+        if (yEnd <= yStart){
+            Arrays.fill(scores, base, base + nX, 1f);
+            return; // no overlap; nothing to compare
+        }
+        boolean luma = comparison == Comparison.LUMA;
+        boolean planes = luma &&
+                imgA.tileSize() == 0 && imgB.tileSize() == 0;
+        byte[] aLuma = planes ? imgA.lumaPlane() : null;
+        byte[] bLuma = planes ? imgB.lumaPlane() : null;
+        int[] aRaster = planes || !imgA.hasRaster() ?
+                null : imgA.rgbRaster();
+        int[] bRaster = planes || !imgB.hasRaster() ?
+                null : imgB.rgbRaster();
+        int[] aRow = aRaster == null && !planes ?
+                Img.rowBuffer(0, width) : null;
+        int[] bRow = bRaster == null && !planes ?
+                Img.rowBuffer(1, width) : null;
+        long[] sums = new long[nX];
+        for (int y = yStart; y < yEnd; y++){
+            int aLine = (y + yOffset) * width;
+            int bLine = y * width;
+            if (!planes){
+                if (aRaster == null){
+                    imgA.copyRow(0, y + yOffset, width, aRow, 0);
+                    aLine = 0;
+                }
+                if (bRaster == null){
+                    imgB.copyRow(0, y, width, bRow, 0);
+                    bLine = 0;
+                }
+            }
+            int[] a = aRaster == null ? aRow : aRaster;
+            int[] b = bRaster == null ? bRow : bRaster;
+            for (int i = 0; i < nX; i++){
+                int xOffset = i - xGate;
+                int xStart = max(0, -xOffset);
+                int xEnd = min(width, width - xOffset);
+                if (xEnd <= xStart){
+                    continue;
+                }
+                int aIndex = aLine + xStart + xOffset;
+                int bIndex = bLine + xStart;
+                int length = xEnd - xStart;
+                if (planes){
+                    sums[i] += 3L * ColorUtil.sumAbsDiffLuma(
+                            aLuma, aIndex, bLuma, bIndex, length
+                    );
+                } else if (luma){
+                    sums[i] += 3L * ColorUtil.sumAbsDiffLuma(
+                            a, aIndex, b, bIndex, length
+                    );
+                } else {
+                    sums[i] += ColorUtil.sumAbsDiffRGB(
+                            a, aIndex, b, bIndex, length
+                    );
+                }
+            }
+        }
+        for (int i = 0; i < nX; i++){
+            int rowLength = min(width, width - (i - xGate)) -
+                    max(0, -(i - xGate));
+            if (rowLength <= 0){
+                scores[base + i] = 1f;
+                continue;
+            }
+            long nPixels = (long)rowLength * (yEnd - yStart);
+            scores[base + i] = Img.normalizedDiff(sums[i], nPixels);
+            if (tally != null){
+                tally.scanned(nPixels);
+            }
+        }
+    }
+
+    private int bestIndex(){
+        SpiralCoordinates spiral =
+                new SpiralCoordinates(2 * xGate, 2 * yGate);
+        int width = 2 * xGate + 1;
+        int best = -1;
+        long bestOrder = Long.MAX_VALUE;  // spiral index of best
+        for (int i = 0; i < scores.length; i++){
+            float score = scores[i];
+            if (Float.isNaN(score) ||
+                    (best >= 0 && score > scores[best])){
+                continue;
+            }
+            long order = spiral.indexOf(i % width - xGate, i / width - yGate);
+            if (best < 0 || score < scores[best] || order < bestOrder){
+                best = i;
+                bestOrder = order;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns whether the score at passed surface position is no
+     * greater than any scored neighbour of it.
+     */
+    private boolean isLocalMinimum(int x, int y){
+        int width = 2 * xGate + 1;
+        int height = 2 * yGate + 1;
+        float score = scores[y * width + x];
+        if (Float.isNaN(score)){
+            return false;
+        }
+        for (int dy = -1; dy <= 1; dy++){
+            for (int dx = -1; dx <= 1; dx++){
+                int nx = x + dx;
+                int ny = y + dy;
+                if (nx >= 0 && nx < width && ny >= 0 && ny < height &&
+                        scores[ny * width + nx] < score){
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private float[] offset(int index){
+        int width = 2 * xGate + 1;
+        return new float[] {index % width - xGate, index / width - yGate};
+    }
+
+    private int index(int x, int y){
+        if (x < -xGate || x > xGate || y < -yGate || y > yGate){
+            throw new IndexOutOfBoundsException(String.format(
+                    "Offset (%s, %s) is outside of gates %s, %s",
+                    x, y, xGate, yGate
+            ));
+        }
+        return (y + yGate) * (2 * xGate + 1) + x + xGate;
+    }
+}
@@ -0,0 +1,113 @@
+package img;
+
+import static java.lang.Math.abs;
+
+/**
+ * Estimates the translation between two images from matches between
+ * their corner keypoints; see FeatureSet.
+ * Each keypoint of imgB is matched to the keypoint of imgA, within
+ * the gates, whose patch differs least from its own, provided no
+ * other candidate comes close. Every match then proposes its
+ * displacement as the motion, and the proposal agreed with by the
+ * most matches wins, as a RANSAC for pure translation that tries
+ * every hypothesis rather than a random few.
+ * Cost grows with the square of the number of keypoints, and does
+ * not depend on the size of the gates.
+ */
+final class FeatureMatch {
+    // best match must differ by at most this fraction of the next best
+    private static final float RATIO = 0.8f;
+    // matches agree if their displacements differ by at most this
+    private static final int TOLERANCE = 1;
+    // fewest agreeing matches accepted as a motion
+    private static final int MIN_INLIERS = 3;
+
+    private FeatureMatch(){}
+
+    /**
+     * Returns offset (x, y) such that keypoints of imgB best match
+     * keypoints of imgA moved by it, the same convention as
+     * Img.appMotion.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param xGate: int
+     * @param yGate: int
+     * @param options: SearchOptions
+     * @return float[2] (x, y), or null if too few keypoints agree
+     */
+    static float[] appMotion(
+            Img imgA,
+            Img imgB,
+            int xGate,
+            int yGate,
+            SearchOptions options
+    ){
+        FeatureSet a = imgA.features(options.getMaxKeypoints());
+        FeatureSet b = imgB.features(options.getMaxKeypoints());
+        int[] dxs = new int[b.size];
+        int[] dys = new int[b.size];
+        int nMatches = 0;
+        for (int j = 0; j < b.size; j++){
+            int best = -1;
+            int bestDiff = Integer.MAX_VALUE;
+            int secondDiff = Integer.MAX_VALUE;
+            for (int i = 0; i < a.size; i++){
+                if (abs(a.xs[i] - b.xs[j]) > xGate ||
+                        abs(a.ys[i] - b.ys[j]) > yGate){
+                    continue;
+                }
+                int diff = b.patchDiff(j, a, i);
+                if (diff < bestDiff){
+                    secondDiff = bestDiff;
+                    bestDiff = diff;
+                    best = i;
+                } else if (diff < secondDiff){
+                    secondDiff = diff;
+                }
+            }
+            if (best >= 0 && (secondDiff == Integer.MAX_VALUE ||
+                    bestDiff <= RATIO * secondDiff)){
+                dxs[nMatches] = a.xs[best] - b.xs[j];
+                dys[nMatches] = a.ys[best] - b.ys[j];
+                nMatches++;
+            }
+        }
+        int bestInliers = 0;
+        int bestHypothesis = -1;
+        for (int h = 0; h < nMatches; h++){
+            int inliers = 0;
+            for (int m = 0; m < nMatches; m++){
+                if (abs(dxs[m] - dxs[h]) <= TOLERANCE &&
+                        abs(dys[m] - dys[h]) <= TOLERANCE){
+                    inliers++;
+                }
+            }
+            // ties are resolved towards the smaller shift,
+            // as the spiral search does.
+            if (inliers > bestInliers || (inliers == bestInliers &&
+                    abs(dxs[h]) + abs(dys[h]) <
+                            abs(dxs[bestHypothesis]) +
+                                    abs(dys[bestHypothesis]))){
+                bestInliers = inliers;
+                bestHypothesis = h;
+            }
+        }
+        if (bestInliers < MIN_INLIERS){
+            return null;
+        }
+        // mean displacement of the matches agreeing with the winner
+        long xSum = 0;
+        long ySum = 0;
+        for (int m = 0; m < nMatches; m++){
+            if (abs(dxs[m] - dxs[bestHypothesis]) <= TOLERANCE &&
+                    abs(dys[m] - dys[bestHypothesis]) <= TOLERANCE){
+                xSum += dxs[m];
+                ySum += dys[m];
+            }
+        }
+        return new float[] {
+                Math.round((float)xSum / bestInliers),
+                Math.round((float)ySum / bestInliers)
+        };
+    }
+}
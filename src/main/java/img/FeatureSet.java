@@ -0,0 +1,219 @@
+package img;
+
+import java.util.Arrays;
+
+/**
+ * Corner keypoints of an Img, each with the patch of luma around it,
+ * as matched by FeatureMatch.
+ * Corners are rated with the Harris response over a 5 x 5 window of
+ * luma gradients. The image is split into a grid of about as many
+ * cells as keypoints wanted, and the strongest corner of each cell
+ * is kept, so that keypoints are spread over the whole image rather
+ * than bunched on its most textured part.
+ */
+final class FeatureSet {
+    // patches span PATCH_RADIUS pixels either side of their keypoint
+    static final int PATCH_RADIUS = 4;
+    static final int PATCH_SIZE = 2 * PATCH_RADIUS + 1;
+    private static final int WINDOW_RADIUS = 2;
+    private static final double HARRIS_K = 0.04;
+    // corners weaker than this fraction of the strongest are dropped
+    private static final double MIN_RELATIVE_RESPONSE = 0.01;
+
+    final int maxKeypoints;
+    final int size;
+    final int[] xs;
+    final int[] ys;
+    final byte[] patches;  // PATCH_SIZE^2 luma values per keypoint
+
+    private FeatureSet(int maxKeypoints, int[] xs, int[] ys, byte[] patches){
+        this.maxKeypoints = maxKeypoints;
+        this.size = xs.length;
+        this.xs = xs;
+        this.ys = ys;
+        this.patches = patches;
+    }
+
+    /**
+     * Detects up to maxKeypoints corners of passed Img.
+     * Gradients are summed over a sliding window of rows, so that
+     * apart from the luma plane, memory used grows with the width of
+     * the image only. Tiled Imgs have no luma plane; their rows are
+     * read through copyRow into a ring of three luma rows instead,
+     * and once the corners are chosen, only the rows under their
+     * patches are read again.
+     * @param img: Img
+     * @param maxKeypoints: int, at least 1
+     * @return FeatureSet
+     */
+    static FeatureSet of(Img img, int maxKeypoints){
+        int width = img.getWidth();
+        int height = img.getHeight();
+        byte[] plane = img.tileSize() == 0 ? img.lumaPlane() : null;
+        int[] rgb = plane == null ? new int[width] : null;
+        // luma of the rows above, at and below the current one
+        byte[][] lines = new byte[3][width];
+        if (height > 2){
+            readLuma(img, plane, 0, lines[0], rgb);
+            readLuma(img, plane, 1, lines[1], rgb);
+        }
+        int cellsX = (int)Math.max(1, Math.min(width, Math.round(
+                Math.sqrt((double)maxKeypoints * width / height)
+        )));
+        int cellsY = Math.max(1, Math.min(height, maxKeypoints / cellsX));
+        int nCells = cellsX * cellsY;
+        double[] cellResponse = new double[nCells];
+        int[] cellX = new int[nCells];
+        int[] cellY = new int[nCells];
+        // keypoints must lie far enough from the border for a patch
+        int margin = Math.max(PATCH_RADIUS, WINDOW_RADIUS + 1);
+        int window = 2 * WINDOW_RADIUS + 1;
+        // gradient products of the last rows, and their column sums
+        int[][] xx = new int[window][width];
+        int[][] yy = new int[window][width];
+        int[][] xy = new int[window][width];
+        long[] sumXX = new long[width];
+        long[] sumYY = new long[width];
+        long[] sumXY = new long[width];
+        for (int y = 1; y < height - 1; y++){
+            int slot = y % window;
+            byte[] above = lines[(y - 1) % 3];
+            byte[] line = lines[y % 3];
+            byte[] below = lines[(y + 1) % 3];
+            readLuma(img, plane, y + 1, below, rgb);
+            for (int x = 0; x < width; x++){
+                sumXX[x] -= xx[slot][x];
+                sumYY[x] -= yy[slot][x];
+                sumXY[x] -= xy[slot][x];
+                int gx = 0;
+                int gy = 0;
+                if (x > 0 && x < width - 1){
+                    gx = (line[x + 1] & 0xff) - (line[x - 1] & 0xff);
+                    gy = (below[x] & 0xff) - (above[x] & 0xff);
+                }
+                xx[slot][x] = gx * gx;
+                yy[slot][x] = gy * gy;
+                xy[slot][x] = gx * gy;
+                sumXX[x] += gx * gx;
+                sumYY[x] += gy * gy;
+                sumXY[x] += gx * gy;
+            }
+            // column sums now span the window centered on row cy
+            int cy = y - WINDOW_RADIUS;
+            if (cy < margin || cy >= height - margin){
+                continue;
+            }
+            long xxSum = 0;
+            long yySum = 0;
+            long xySum = 0;
+            for (int x = 0; x < width; x++){
+                xxSum += sumXX[x];
+                yySum += sumYY[x];
+                xySum += sumXY[x];
+                if (x >= window){
+                    xxSum -= sumXX[x - window];
+                    yySum -= sumYY[x - window];
+                    xySum -= sumXY[x - window];
+                }
+                int cx = x - WINDOW_RADIUS;
+                if (cx < margin || cx >= width - margin){
+                    continue;
+                }
+                double trace = (double)xxSum + yySum;
+                double response = (double)xxSum * yySum -
+                        (double)xySum * xySum - HARRIS_K * trace * trace;
+                int cell = (int)((long)cy * cellsY / height) * cellsX +
+                        (int)((long)cx * cellsX / width);
+                if (response > cellResponse[cell]){
+                    cellResponse[cell] = response;
+                    cellX[cell] = cx;
+                    cellY[cell] = cy;
+                }
+            }
+        }
+        double strongest = 0;
+        for (double response : cellResponse){
+            strongest = Math.max(strongest, response);
+        }
+        int n = 0;
+        for (int cell = 0; cell < nCells; cell++){
+            if (cellResponse[cell] > 0 &&
+                    cellResponse[cell] >= strongest * MIN_RELATIVE_RESPONSE){
+                cellX[n] = cellX[cell];
+                cellY[n] = cellY[cell];
+                n++;
+            }
+        }
+        int[] xs = Arrays.copyOf(cellX, n);
+        int[] ys = Arrays.copyOf(cellY, n);
+        byte[] patches = new byte[n * PATCH_SIZE * PATCH_SIZE];
+        // rows under any patch, each read once however many it is under
+        boolean[] needed = new boolean[height];
+        for (int k = 0; k < n; k++){
+            Arrays.fill(
+                    needed, ys[k] - PATCH_RADIUS, ys[k] + PATCH_RADIUS + 1,
+                    true
+            );
+        }
+        byte[] line = lines[0];
+        for (int y = 0; y < height; y++){
+            if (!needed[y]){
+                continue;
+            }
+            readLuma(img, plane, y, line, rgb);
+            for (int k = 0; k < n; k++){
+                int row = y - ys[k] + PATCH_RADIUS;
+                if (row < 0 || row >= PATCH_SIZE){
+                    continue;
+                }
+                System.arraycopy(
+                        line, xs[k] - PATCH_RADIUS,
+                        patches, (k * PATCH_SIZE + row) * PATCH_SIZE,
+                        PATCH_SIZE
+                );
+            }
+        }
+        return new FeatureSet(maxKeypoints, xs, ys, patches);
+    }
+
+    /**
+     * Returns sum of absolute luma differences between the patch of
+     * keypoint a of this set and that of keypoint b of other.
+     * @param a: int
+     * @param other: FeatureSet
+     * @param b: int
+     * @return int
+     */
+    int patchDiff(int a, FeatureSet other, int b){
+        int area = PATCH_SIZE * PATCH_SIZE;
+        return ColorUtil.sumAbsDiffLuma(
+                patches, a * area, other.patches, b * area, area
+        );
+    }
+
+    /**
+     * Writes luma of row y of passed Img into dst, from its luma
+     * plane if it has one, else converted from a row read into rgb.
+     * @param img: Img
+     * @param plane: byte[] luma plane of img, or null
+     * @param y: int
+     * @param dst: byte[] of img width
+     * @param rgb: int[] of img width, used when plane is null
+     */
+    private static void readLuma(
+            Img img,
+            byte[] plane,
+            int y,
+            byte[] dst,
+            int[] rgb
+    ){
+        if (plane != null){
+            System.arraycopy(plane, y * dst.length, dst, 0, dst.length);
+            return;
+        }
+        img.copyRow(0, y, rgb.length, rgb, 0);
+        for (int x = 0; x < rgb.length; x++){
+            dst[x] = (byte)ColorUtil.luma(rgb[x]);
+        }
+    }
+}
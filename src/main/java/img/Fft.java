@@ -0,0 +1,110 @@
+package img;
+
+/**
+ * Radix-2 fast fourier transforms over split real / imaginary arrays.
+ * Sizes passed to these methods must be powers of two.
+ */
+final class Fft {
+    private Fft(){}
+
+    /**
+     * Returns the smallest power of two greater than or equal to n.
+     * @param n: int
+     * @return int
+     */
+    static int nextPowerOfTwo(int n){
+        int size = 1;
+        while (size < n){
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * Transforms n values starting at offset, spaced stride apart,
+     * in place. The inverse transform is scaled by 1 / n.
+     * @param re: double[] real parts
+     * @param im: double[] imaginary parts
+     * @param offset: int index of first value
+     * @param stride: int distance between consecutive values
+     * @param n: int number of values, a power of two
+     * @param inverse: boolean
+     */
+    static void transform(
+            double[] re,
+            double[] im,
+            int offset,
+            int stride,
+            int n,
+            boolean inverse
+    ){
+        // reorder values into bit-reversed index order
+        for (int i = 1, j = 0; i < n; i++){
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1){
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j){
+                int a = offset + i * stride;
+                int b = offset + j * stride;
+                double t = re[a]; re[a] = re[b]; re[b] = t;
+                t = im[a]; im[a] = im[b]; im[b] = t;
+            }
+        }
+        // combine butterflies of doubling length
+        for (int len = 2; len <= n; len <<= 1){
+            double angle = (inverse ? 2 : -2) * Math.PI / len;
+            double stepRe = Math.cos(angle);
+            double stepIm = Math.sin(angle);
+            int half = len >> 1;
+            for (int start = 0; start < n; start += len){
+                double wRe = 1;
+                double wIm = 0;
+                for (int k = 0; k < half; k++){
+                    int a = offset + (start + k) * stride;
+                    int b = a + half * stride;
+                    double bRe = re[b] * wRe - im[b] * wIm;
+                    double bIm = re[b] * wIm + im[b] * wRe;
+                    re[b] = re[a] - bRe;
+                    im[b] = im[a] - bIm;
+                    re[a] += bRe;
+                    im[a] += bIm;
+                    double nextRe = wRe * stepRe - wIm * stepIm;
+                    wIm = wRe * stepIm + wIm * stepRe;
+                    wRe = nextRe;
+                }
+            }
+        }
+        if (inverse){
+            for (int i = 0; i < n; i++){
+                re[offset + i * stride] /= n;
+                im[offset + i * stride] /= n;
+            }
+        }
+    }
+
+    /**
+     * Transforms a row-major width x height grid in place, by
+     * transforming each row, then each column.
+     * @param re: double[] real parts
+     * @param im: double[] imaginary parts
+     * @param width: int, a power of two
+     * @param height: int, a power of two
+     * @param inverse: boolean
+     */
+    static void transform2D(
+            double[] re,
+            double[] im,
+            int width,
+            int height,
+            boolean inverse
+    ){
+        for (int y = 0; y < height; y++){
+            transform(re, im, y * width, 1, width, inverse);
+        }
+        for (int x = 0; x < width; x++){
+            transform(re, im, x, width, height, inverse);
+        }
+    }
+}
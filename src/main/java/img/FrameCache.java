@@ -0,0 +1,195 @@
+package img;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Cache of images decoded from files, for jobs that compare the
+ * same file many times, such as one reference frame against many
+ * targets. Cached Imgs keep the summed-area tables and pyramids
+ * built for them by searches, so those are also built only once.
+ * An entry is reused only while its file keeps the modification
+ * time and size it had when decoded.
+ * The cache holds at most maxBytes, as estimated by the most each
+ * Img may retain; least recently used entries are evicted first.
+ * Any number of threads may use a FrameCache at once. A file
+ * requested by several threads at once is decoded only once.
+ */
+public final class FrameCache {
+    private final long maxBytes;
+    // entries by absolute path, least recently used first
+    private final LinkedHashMap<Path, Entry> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;     // total weight of decoded entries
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates cache holding up to maxBytes of decoded images.
+     * @param maxBytes: long, at least 1
+     */
+    public FrameCache(long maxBytes){
+        if (maxBytes < 1){
+            throw new IllegalArgumentException(
+                    "maxBytes must be at least 1: " + maxBytes
+            );
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns Img decoded from passed path, decoding it only if it
+     * is not cached, or if the file has changed since.
+     * @param path: String
+     * @return Img
+     * @throws IOException: On failure to read or decode the file
+     */
+    public Img get(String path) throws IOException {
+        Path key = Paths.get(path).toAbsolutePath().normalize();
+        BasicFileAttributes attributes =
+                Files.readAttributes(key, BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+        Entry entry;
+        boolean owner = false;
+        synchronized (this){
+            entry = entries.get(key);
+            if (entry != null &&
+                    entry.modified == modified && entry.size == size){
+                hits++;
+            } else {
+                if (entry != null){
+                    remove(key, entry); // file has changed
+                }
+                misses++;
+                entry = new Entry(modified, size, () -> Img.fromPath(path));
+                entries.put(key, entry);
+                owner = true;
+            }
+        }
+        if (owner){
+            // decode outside the lock; other threads wanting the same
+            // file wait on the task rather than decoding it again.
+            entry.task.run();
+        }
+        Img img;
+        try {
+            img = FrameSequence.decoded(entry.task);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this){
+                if (entries.get(key) == entry){
+                    entries.remove(key);
+                }
+            }
+            throw e;
+        }
+        if (owner){
+            synchronized (this){
+                // the entry may have been replaced or cleared meanwhile
+                if (entries.get(key) == entry){
+                    entry.weight = img.retainedBytesBound();
+                    bytes += entry.weight;
+                    evict();
+                }
+            }
+        }
+        return img;
+    }
+
+    /**
+     * Removes entry of passed path, if any.
+     * @param path: String
+     */
+    public synchronized void invalidate(String path){
+        Path key = Paths.get(path).toAbsolutePath().normalize();
+        Entry entry = entries.get(key);
+        if (entry != null){
+            remove(key, entry);
+        }
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public synchronized void clear(){
+        entries.clear();
+        bytes = 0;
+    }
+
+    public long getMaxBytes(){
+        return maxBytes;
+    }
+
+    /**
+     * Returns estimated bytes held by decoded entries.
+     * @return long
+     */
+    public synchronized long getBytes(){
+        return bytes;
+    }
+
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    public synchronized long getHits(){
+        return hits;
+    }
+
+    public synchronized long getMisses(){
+        return misses;
+    }
+
+    public synchronized long getEvictions(){
+        return evictions;
+    }
+
+    /**
+     * Evicts least recently used entries until the cache is within
+     * its bound. An entry larger than the bound on its own is
+     * evicted too, after being returned to its caller.
+     * Entries still being decoded have no weight yet, and are kept.
+     */
+    private void evict(){
+        Iterator<Map.Entry<Path, Entry>> eldest =
+                entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()){
+            Entry entry = eldest.next().getValue();
+            if (entry.weight > 0){
+                eldest.remove();
+                bytes -= entry.weight;
+                evictions++;
+            }
+        }
+    }
+
+    private void remove(Path key, Entry entry){
+        entries.remove(key);
+        bytes -= entry.weight;
+    }
+
+    /**
+     * Cached Img of a file, with the file state it was decoded from.
+     */
+    private static final class Entry {
+        final long modified;
+        final long size;
+        final FutureTask<Img> task;
+        long weight;    // zero until decoded
+
+        Entry(long modified, long size, Callable<Img> decode){
+            this.modified = modified;
+            this.size = size;
+            task = new FutureTask<>(decode);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package img;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Iterator yielding the apparent motion between each consecutive
+ * pair of frames from a FrameSource.
+ * Each frame is decoded once, and is kept as the reference for the
+ * frame after it. Upcoming frames are decoded on background threads
+ * while the current pair is being searched.
+ * Closing the sequence stops its decoding threads.
+ */
+public final class FrameSequence implements Iterator<float[]>, AutoCloseable {
+    private final FrameSource source;
+    private final Tracker tracker;
+    private final SearchOptions options;
+    private final float xGate;
+    private final float yGate;
+    private final int prefetch;
+    private final MotionPredictor predictor;
+    private final ExecutorService decoder;
+    // frames being decoded, in frame order
+    private final Deque<Future<Img>> pending = new ArrayDeque<>();
+    private boolean sourceDone;
+    private Img reference;
+
+    /**
+     * Creates sequence of motions between frames of passed source.
+     * Gates are handled as by JPngTrack.translationFromPaths; a
+     * gate of zero leaves that axis (nearly) unlimited.
+     * @param source: FrameSource
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @param tracker: Tracker running each search
+     * @param prefetch: int number of frames decoded ahead, at least 1
+     * @throws IOException: On failure to read or decode first frame
+     */
+    public FrameSequence(
+            FrameSource source,
+            float xGate,
+            float yGate,
+            SearchOptions options,
+            Tracker tracker,
+            int prefetch
+    ) throws IOException {
+        this(source, xGate, yGate, options, tracker, prefetch, null);
+    }
+
+    /**
+     * Creates sequence of motions between frames of passed source,
+     * seeding the search of each pair with the prediction of passed
+     * predictor, which is then told the motion found.
+     * @param source: FrameSource
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @param tracker: Tracker running each search
+     * @param prefetch: int number of frames decoded ahead, at least 1
+     * @param predictor: MotionPredictor, or null for no prediction
+     * @throws IOException: On failure to read or decode first frame
+     */
+    public FrameSequence(
+            FrameSource source,
+            float xGate,
+            float yGate,
+            SearchOptions options,
+            Tracker tracker,
+            int prefetch,
+            MotionPredictor predictor
+    ) throws IOException {
+        if (prefetch < 1){
+            throw new IllegalArgumentException(
+                    "prefetch must be at least 1: " + prefetch
+            );
+        }
+        this.source = source;
+        this.xGate = xGate;
+        this.yGate = yGate;
+        this.options = options;
+        this.tracker = tracker;
+        this.prefetch = prefetch;
+        this.predictor = predictor;
+        decoder = Executors.newFixedThreadPool(prefetch, r -> {
+            Thread thread = new Thread(r, "FrameSequence decoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            fill();
+            if (!pending.isEmpty()){
+                reference = decoded(pending.poll());
+            }
+            fill();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns whether another frame follows the current reference.
+     * @return boolean
+     * @throws UncheckedIOException: On failure to read from source
+     */
+    @Override
+    public boolean hasNext(){
+        try {
+            fill();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return reference != null && !pending.isEmpty();
+    }
+
+    /**
+     * Returns motion between the current reference frame and the
+     * frame after it, which then becomes the reference.
+     * @return float[2] (x, y)
+     * @throws UncheckedIOException: On failure to read or decode
+     */
+    @Override
+    public float[] next(){
+        if (!hasNext()){
+            throw new NoSuchElementException();
+        }
+        Img frame;
+        try {
+            frame = decoded(pending.poll());
+            // queue further frames before searching, so that they
+            // decode while the search runs.
+            fill();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        float[] gates = Tracker.gates(frame, xGate, yGate);
+        SearchOptions pairOptions = options;
+        if (predictor != null){
+            pairOptions = options.copy()
+                    .setPrediction(predictor.predict())
+                    .setPredictionRadius(predictor.searchRadius());
+        }
+        float[] motion = tracker.appMotion(
+                reference, frame, gates[0], gates[1], pairOptions
+        );
+        if (predictor != null){
+            predictor.observe(motion);
+        }
+        reference = frame;
+        return motion;
+    }
+
+    /**
+     * Stops decoding threads. Frames already being decoded are
+     * abandoned.
+     */
+    @Override
+    public void close(){
+        decoder.shutdownNow();
+        pending.clear();
+    }
+
+    /**
+     * Queues decoding of frames until prefetch frames are pending
+     * or the source is exhausted.
+     */
+    private void fill() throws IOException {
+        while (!sourceDone && pending.size() < prefetch){
+            Callable<Img> task = source.next();
+            if (task == null){
+                sourceDone = true;
+            } else {
+                pending.add(decoder.submit(timed(task)));
+            }
+        }
+    }
+
+    /**
+     * Wraps decoding task so that it reports its time to the
+     * listener of the options, if there is one.
+     * @param task: Callable producing Img
+     * @return Callable producing Img
+     */
+    private Callable<Img> timed(Callable<Img> task){
+        SearchListener listener = options.getListener();
+        if (listener == null){
+            return task;
+        }
+        return () -> {
+            long start = System.nanoTime();
+            Img img = task.call();
+            listener.frameDecoded(System.nanoTime() - start);
+            return img;
+        };
+    }
+
+    /**
+     * Waits for passed frame to be decoded, rethrowing the failure
+     * of its decoding, if any. Interrupts are deferred until then.
+     * Shared with FrameCache.
+     * @param frame: Future of Img
+     * @return Img
+     * @throws IOException: if the frame could not be decoded
+     */
+    static Img decoded(Future<Img> frame) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true){
+                try {
+                    return frame.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException){
+                throw (IOException)cause;
+            }
+            if (cause instanceof RuntimeException){
+                throw (RuntimeException)cause;
+            }
+            throw new IOException("Failed to decode frame", cause);
+        } finally {
+            if (interrupted){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package img;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+
+/**
+ * Ordered source of frames for a FrameSequence.
+ * Reading the source happens in frame order on one thread at a
+ * time; decoding each frame is split out into a task, so that
+ * several upcoming frames can be decoded at once.
+ */
+public interface FrameSource {
+    /**
+     * Reads the next frame, and returns a task that decodes it.
+     * @return Callable producing the decoded Img, or null if there
+     *      are no frames left.
+     * @throws IOException: On failure to read from the source
+     */
+    Callable<Img> next() throws IOException;
+
+    /**
+     * Returns source decoding the image at each passed path.
+     * @param paths: Iterator of String
+     * @return FrameSource
+     */
+    static FrameSource fromPaths(Iterator<String> paths){
+        return () -> {
+            if (!paths.hasNext()){
+                return null;
+            }
+            String path = paths.next();
+            return () -> Img.fromPath(path);
+        };
+    }
+
+    /**
+     * Returns source fetching the image at each passed path from
+     * passed cache, which decodes it if it is not cached.
+     * @param paths: Iterator of String
+     * @param cache: FrameCache
+     * @return FrameSource
+     */
+    static FrameSource fromPaths(Iterator<String> paths, FrameCache cache){
+        return () -> {
+            if (!paths.hasNext()){
+                return null;
+            }
+            String path = paths.next();
+            return () -> cache.get(path);
+        };
+    }
+
+    /**
+     * Returns source reading consecutive PNG images from a stream,
+     * such as the output of a capture process.
+     * @param in: InputStream
+     * @return FrameSource
+     */
+    static FrameSource fromPngStream(InputStream in){
+        return new PngStreamSource(in);
+    }
+}
@@ -1,126 +1,247 @@
 package img;
 
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.NoSuchElementException;
-import java.util.stream.StreamSupport;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
-import static java.lang.Math.abs;
 import static java.lang.Math.max;
+import static java.lang.Math.min;
 
 /**
  * Class handling pixel accessing and other methods for a passed image
  */
 public abstract class Img implements ImgI{
-    // create object used as a lock for multithreaded processes
-    private final static Object evaluationLock = new Object();
+    private volatile IntegralImage integral; // built on first use
+    private volatile ImgPyramid pyramid;     // deepest built so far
+    private volatile byte[] luma;            // built on first use
+    private volatile FeatureSet features;    // latest detected
+    // rows of images without a packed raster, converted for comparison
+    private static final ThreadLocal<int[][]> rowBuffers =
+            ThreadLocal.withInitial(() -> new int[2][0]);
 
     /**
-     * Factory method taking a String path and returning an Img
+     * Factory method taking a String path and returning an Img.
+     * PNG images are decoded row by row with PNGJ; other formats
+     * are read with ImageIO.
      * @return Img
      */
     public static Img fromPath(String path) throws IOException{
-        return BuffImg.BuffImgFromPath(path);
+        if (PngDecoder.isPng(path)){
+            return PngDecoder.decode(path);
+        }
+        return RasterImg.RasterImgFromPath(path);
     }
 
     /**
-     * Gets iterator for iterating over pixels (as rgb)
-     * @return Iterable
+     * Factory method wrapping an array of packed RGB values, in which
+     * pixel (x, y) is at index y * width + x, without copying it.
+     * The array must not be modified while the Img is in use.
+     * @param rgb: int[] of width * height packed RGB values
+     * @param width: int
+     * @param height: int
+     * @return Img
      */
-    public IPixelIterable pixels(){
-        return offsetPixels(0, 0);
+    public static Img wrap(int[] rgb, int width, int height){
+        return new RasterImg(width, height, rgb);
     }
 
     /**
-     * Gets apparent motion between this Img and another
-     * @param other: Img
-     * @param xGate: float
-     * @param yGate: float
-     * @return float[2] (x, y)
+     * Factory method wrapping an array of packed RGB values, in which
+     * pixel (x, y) is at index offset + y * stride + x, without
+     * copying it. The array must not be modified while the Img is
+     * in use.
+     * @param rgb: int[]
+     * @param offset: int index of pixel (0, 0)
+     * @param width: int
+     * @param height: int
+     * @param stride: int, at least width
+     * @return Img
      */
-    public float[] appMotion(Img other, float xGate, float yGate){
-        if (getHeight() != getHeight() || getWidth() != getWidth()){
-            throw new IllegalArgumentException(String.format(
-                    "images to compare for motion are of different size." +
-                    "(%s, %s) vs (%s, %s)",
-                    getWidth(), getHeight(),
-                    other.getWidth(), other.getHeight()
-            ));
+    public static Img wrap(
+            int[] rgb,
+            int offset,
+            int width,
+            int height,
+            int stride
+    ){
+        if (offset == 0 && stride == width && rgb.length == width * height){
+            return new RasterImg(width, height, rgb);
         }
-        EvaluationData data = new EvaluationData(other, xGate, yGate);
-        // work in parallel w to find the best x and y match.
-        int nProcessors = data.nLiveThreads =
-                Runtime.getRuntime().availableProcessors();
-        Thread[] threads = new Thread[nProcessors];
-        for (int i = 0; i < nProcessors; i++){
-            threads[i] = new Thread(() -> evaluate(data));
-            threads[i].start();
-        }
-        // wait for lock object to be released by all threads evaluating offsets
-        synchronized(evaluationLock) {
-            try {
-                evaluationLock.wait();
-            } catch (InterruptedException ignore) {}
-        }
-        return data.bestOffset;
+        return new StridedRasterImg(rgb, offset, width, height, stride);
     }
 
     /**
-     * Evaluation loop that is run by each thread evaluating
-     * different offsets.
-     * @param data
+     * Factory method wrapping an array of pixels in passed format,
+     * in which pixel (x, y) starts at byte
+     * offset + y * stride + x * format.getBytesPerPixel(), without
+     * copying it. The array must not be modified while the Img is
+     * in use.
+     * @param data: byte[]
+     * @param offset: int index of first byte of pixel (0, 0)
+     * @param width: int
+     * @param height: int
+     * @param stride: int bytes from the start of one row to the next
+     * @param format: PixelFormat
+     * @return Img
      */
-    private void evaluate(EvaluationData data){
-        int[] offset; // current x, y offset
-        // while evaluation is underway...
-        while (data.offsetIterator.hasNext()){
-            // first get next offset to test from iterator
-            synchronized (data.offsetIterator){
-                // two threads should not simultaneously ask for a new
-                // pair of offsets.
-                offset = data.offsetIterator.next(); // x and y offset
-            }
-            evaluateOffset(data, offset);
-        }
-        // if iterator has no further position inside bound,
-        // decrement number of live threads
-        data.nLiveThreads --;
-        if (data.nLiveThreads <= 0){
-            // if there are now no threads left running,
-            // unlock evaluation lock.
-            synchronized (evaluationLock){
-                evaluationLock.notify();
-            }
+    public static Img wrap(
+            byte[] data,
+            int offset,
+            int width,
+            int height,
+            int stride,
+            PixelFormat format
+    ){
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.position(offset);
+        return new BufferImg(buffer, width, height, stride, format);
+    }
+
+    /**
+     * Factory method wrapping a heap or direct buffer of pixels in
+     * passed format, starting at its current position, as
+     * wrap(byte[], int, int, int, int, PixelFormat) does for arrays.
+     * The position of the buffer is not changed, and its contents
+     * must not be modified while the Img is in use.
+     * @param buffer: ByteBuffer
+     * @param width: int
+     * @param height: int
+     * @param stride: int bytes from the start of one row to the next
+     * @param format: PixelFormat
+     * @return Img
+     */
+    public static Img wrap(
+            ByteBuffer buffer,
+            int width,
+            int height,
+            int stride,
+            PixelFormat format
+    ){
+        return new BufferImg(buffer.duplicate(), width, height, stride, format);
+    }
+
+    /**
+     * Factory method mapping a raw file of pixels in passed format
+     * into memory, read only, without reading it up front; pixel
+     * (0, 0) starts at byte offset of the file. Pages are read by
+     * the operating system as searches touch them.
+     * @param path: Path
+     * @param offset: long
+     * @param width: int
+     * @param height: int
+     * @param stride: int bytes from the start of one row to the next
+     * @param format: PixelFormat
+     * @return Img
+     * @throws IOException: On failure to open or map the file
+     */
+    public static Img map(
+            Path path,
+            long offset,
+            int width,
+            int height,
+            int stride,
+            PixelFormat format
+    ) throws IOException{
+        long size = (long)(height - 1) * stride +
+                (long)width * format.bytesPerPixel;
+        try (FileChannel channel = FileChannel.open(
+                path, StandardOpenOption.READ)){
+            // the mapping stays valid after the channel is closed
+            ByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, offset, size
+            );
+            return new BufferImg(buffer, width, height, stride, format);
         }
     }
 
     /**
-     * Evaluates a single pair of x, y offsets to see what the
-     * difference ratio is.
-     * @param data: EvaluationData
-     * @param offset: int[] x, y
+     * Factory method decoding a PNG image out of core, for images
+     * too large for the heap, as tiled(String, Path, long) does with
+     * scratch files in the default temporary directory and a 64 MiB
+     * tile cache.
+     * @param path: String
+     * @return Img
+     * @throws IOException: On failure to read or decode the file
      */
-    private void evaluateOffset(EvaluationData data, int[] offset){
-        assert offset.length == 2;
-        float diff = diffAtOffset(
-                data.img,
-                offset[0],
-                offset[1],
-                data.leastDiff
+    public static Img tiled(String path) throws IOException{
+        return tiled(
+                path, Paths.get(System.getProperty("java.io.tmpdir")),
+                64L << 20
         );
-        if (diff < data.leastDiff){
-            data.leastDiff = diff;
-            data.bestOffset =
-                    new float[] {(float) offset[0], (float) offset[1]};
+    }
+
+    /**
+     * Factory method decoding a PNG image out of core, for images
+     * too large for the heap. Rows are streamed from the decoder into
+     * a memory-mapped scratch file created in scratchDirectory, in
+     * square tiles; searches read the tiles through a cache holding
+     * about cacheBytes on the heap, however large the image is.
+     * Summed-area tables and luma planes are not built for such an
+     * Img; pyramids are, as further scratch files.
+     * @param path: String
+     * @param scratchDirectory: Path
+     * @param cacheBytes: long
+     * @return Img
+     * @throws IOException: On failure to read or decode the file, or
+     *          if it is not a PNG image
+     */
+    public static Img tiled(
+            String path,
+            Path scratchDirectory,
+            long cacheBytes
+    ) throws IOException{
+        if (!PngDecoder.isPng(path)){
+            throw new IOException(
+                    "Only PNG images can be decoded out of core: " + path
+            );
         }
+        int tileSize = TiledImg.DEFAULT_TILE_SIZE;
+        long tileBytes = 4L * tileSize * tileSize;
+        return PngDecoder.decodeTiled(
+                path, scratchDirectory, tileSize,
+                (int)Math.min(cacheBytes / tileBytes, Integer.MAX_VALUE)
+        );
+    }
+
+    /**
+     * Gets iterator for iterating over pixels (as rgb)
+     * @return Iterable
+     */
+    public IPixelIterable pixels(){
+        return offsetPixels(0, 0);
+    }
+
+    /**
+     * Gets apparent motion between this Img and another
+     * @param other: Img
+     * @param xGate: float
+     * @param yGate: float
+     * @return float[2] (x, y)
+     */
+    public float[] appMotion(Img other, float xGate, float yGate){
+        return appMotion(other, xGate, yGate, SearchOptions.spiral());
     }
 
     /**
-     * Yields spiraling coordinate values
-     * @return Iterable returning int[]
+     * Gets apparent motion between this Img and another, using
+     * the search strategy described by passed options.
+     * The search runs on the workers of Tracker.common().
+     * @param other: Img
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @return float[2] (x, y)
      */
-    private Iterable<int[]> spiralCoordinates(){
-        return new SpiralCoordinates(getWidth(), getHeight());
+    public float[] appMotion(
+            Img other,
+            float xGate,
+            float yGate,
+            SearchOptions options
+    ){
+        return Tracker.common().appMotion(this, other, xGate, yGate, options);
     }
 
     /**
@@ -130,213 +251,486 @@ public abstract class Img implements ImgI{
      * returns 1. (max difference)
      * This can speed up operations that only need to test if
      * difference is less than some value-to-beat.
+     * Pixel (x, y) of otherImg is compared with pixel
+     * (x + xOffset, y + yOffset) of this Img, over the rectangle
+     * where the two overlap.
      * @param otherImg: Img
      * @param xOffset: int
      * @param yOffset: int
      * @param exclusionVal: float
      * @return float
      */
-    private float diffAtOffset(
+    float diffAtOffset(
             Img otherImg,
             int xOffset,
             int yOffset,
             float exclusionVal
         ){
-        float cumulativeDiff = 0f;
-        int nPixels = (getWidth() - abs(xOffset)) * (getHeight() - abs(yOffset));
-        for (int[] colorPair : pixelPairs(otherImg, xOffset, yOffset)){
-            cumulativeDiff += ColorUtil.compareRGB(colorPair[0], colorPair[1]);
-            if (cumulativeDiff / nPixels > exclusionVal){
+        return diffInRegion(
+                otherImg, 0, 0, getWidth(), getHeight(),
+                xOffset, yOffset, exclusionVal
+        );
+    }
+
+    /**
+     * Returns percentage similarity between a region of otherImg and
+     * the same region of this Img moved by an offset, as
+     * diffAtOffset does for whole images. The region spans x0 to x1
+     * and y0 to y1, exclusive, in coordinates of otherImg; only the
+     * part of it where the two images overlap is compared.
+     * @param otherImg: Img
+     * @param x0: int
+     * @param y0: int
+     * @param x1: int
+     * @param y1: int
+     * @param xOffset: int
+     * @param yOffset: int
+     * @param exclusionVal: float
+     * @return float
+     */
+    float diffInRegion(
+            Img otherImg,
+            int x0,
+            int y0,
+            int x1,
+            int y1,
+            int xOffset,
+            int yOffset,
+            float exclusionVal
+    ){
+        return diffInRegion(
+                otherImg, x0, y0, x1, y1, xOffset, yOffset, exclusionVal,
+                Comparison.RGB, false, null
+        );
+    }
+
+    /**
+     * As diffInRegion, comparing the pixel values selected by
+     * comparison, optionally visiting rows in interleaved order, and
+     * counting the scan into passed tally.
+     * Luma differences are scaled by 3, so that luma scores share
+     * the range of RGB scores and go through normalizedDiff alike.
+     * Interleaved scans visit the rows of the overlap in bit-reversed
+     * order of their index: the first, middle, quarter and three
+     * quarter rows, and so on, so that the rows scanned first are
+     * spread over the whole overlap rather than bunched at its top.
+     * An offset that only differs in part of the image is then
+     * excluded sooner. The exclusion check and the summed diffs are
+     * the same in either order, so results are identical.
+     * @param otherImg: Img
+     * @param x0: int
+     * @param y0: int
+     * @param x1: int
+     * @param y1: int
+     * @param xOffset: int
+     * @param yOffset: int
+     * @param exclusionVal: float
+     * @param comparison: Comparison
+     * @param interleaved: boolean
+     * @param tally: SearchRecorder.Tally or null to count nothing
+     * @return float
+     */
+    float diffInRegion(
+            Img otherImg,
+            int x0,
+            int y0,
+            int x1,
+            int y1,
+            int xOffset,
+            int yOffset,
+            float exclusionVal,
+            Comparison comparison,
+            boolean interleaved,
+            SearchRecorder.Tally tally
+    ){
+        if (tileSize() > 0 || otherImg.tileSize() > 0){
+            return diffInTiles(
+                    otherImg, x0, y0, x1, y1, xOffset, yOffset,
+                    exclusionVal, comparison, tally
+            );
+        }
+        int width = getWidth();
+        int height = getHeight();
+        boolean luma = comparison == Comparison.LUMA;
+        byte[] aLuma = luma ? lumaPlane() : null;
+        byte[] bLuma = luma ? otherImg.lumaPlane() : null;
+        // images without a packed raster have each row converted
+        // into a row buffer before it is compared
+        int[] aRaster = luma || !hasRaster() ? null : rgbRaster();
+        int[] bRaster = luma || !otherImg.hasRaster() ?
+                null : otherImg.rgbRaster();
+        // bounds of overlap, in coordinates of otherImg
+        int xStart = max(x0, -xOffset);
+        int xEnd = min(x1, width - xOffset);
+        int yStart = max(y0, -yOffset);
+        int yEnd = min(y1, height - yOffset);
+        if (xEnd <= xStart || yEnd <= yStart){
+            return 1f; // no overlap; nothing to compare
+        }
+        int rowLength = xEnd - xStart;
+        int nRows = yEnd - yStart;
+        long nPixels = (long)rowLength * nRows;
+        // interleaved scans walk the indices of a power of two number
+        // of rows in bit-reversed order, skipping those past the end
+        int bits = interleaved ?
+                32 - Integer.numberOfLeadingZeros(nRows - 1) : 0;
+        int nSlots = bits == 0 ? nRows : 1 << bits;
+        int rows = 0;            // rows scanned so far
+        long cumulativeDiff = 0; // summed channel differences
+        int[] aRow = aRaster == null && !luma ?
+                rowBuffer(0, rowLength) : null;
+        int[] bRow = bRaster == null && !luma ?
+                rowBuffer(1, rowLength) : null;
+        for (int i = 0; i < nSlots; i++){
+            int row = bits == 0 ? i : Integer.reverse(i) >>> (32 - bits);
+            if (row >= nRows){
+                continue;
+            }
+            int y = yStart + row;
+            rows++;
+            int aIndex = (y + yOffset) * width + xStart + xOffset;
+            int bIndex = y * width + xStart;
+            if (luma){
+                cumulativeDiff += 3L * ColorUtil.sumAbsDiffLuma(
+                        aLuma, aIndex, bLuma, bIndex, rowLength
+                );
+            } else {
+                if (aRaster == null){
+                    copyRow(
+                            xStart + xOffset, y + yOffset, rowLength, aRow, 0
+                    );
+                    aIndex = 0;
+                }
+                if (bRaster == null){
+                    otherImg.copyRow(xStart, y, rowLength, bRow, 0);
+                    bIndex = 0;
+                }
+                cumulativeDiff += ColorUtil.sumAbsDiffRGB(
+                        aRaster == null ? aRow : aRaster, aIndex,
+                        bRaster == null ? bRow : bRaster, bIndex,
+                        rowLength
+                );
+            }
+            // diffs are never negative, so checking once per row
+            // excludes the same offsets as checking every pixel.
+            if (normalizedDiff(cumulativeDiff, nPixels) > exclusionVal){
+                if (tally != null){
+                    tally.pruned((long)rowLength * rows, rows, nRows);
+                }
                 return 1f;
             }
         }
-        return cumulativeDiff / nPixels;
+        if (tally != null){
+            tally.scanned(nPixels);
+        }
+        return normalizedDiff(cumulativeDiff, nPixels);
     }
 
     /**
-     * Checks that offset passed is smaller than size of Img.
-     * If not, raises a ValueError
+     * Returns whether diffAtOffset at passed offset is certain to
+     * exceed exclusionVal, judged only from channel sums over blocks
+     * of the overlap. This never excludes an offset that
+     * diffAtOffset would not, so it may be used to skip offsets
+     * without changing search results.
+     * @param otherImg: Img
      * @param xOffset: int
      * @param yOffset: int
+     * @param exclusionVal: float
+     * @param blocks: int blocks per side of the overlap
+     * @return boolean
      */
-    void validateOffsets(int xOffset, int yOffset){
-        if (xOffset > getWidth() || yOffset > getHeight()){
-            throw new IllegalArgumentException(String.format(
-                    "Passed offset is greater than size of image." +
-                            "Offsets: %s, %s  Image size: %s, %s",
-                    xOffset, yOffset, getWidth(), getHeight()
-            ));
+    boolean excludedBySums(
+            Img otherImg,
+            int xOffset,
+            int yOffset,
+            float exclusionVal,
+            int blocks
+    ){
+        IntegralImage aSums = integralImage();
+        IntegralImage bSums = otherImg.integralImage();
+        if (aSums == null || bSums == null){
+            return false;
         }
-    }
-
-    private Iterable<int[]> pixelPairs(Img otherImg, int xOffset, int yOffset){
-        return new PixelPairs(this, otherImg, xOffset, yOffset);
+        int width = getWidth();
+        int height = getHeight();
+        int xStart = max(0, -xOffset);
+        int xEnd = min(width, width - xOffset);
+        int yStart = max(0, -yOffset);
+        int yEnd = min(height, height - yOffset);
+        if (xEnd <= xStart || yEnd <= yStart){
+            return false; // diffAtOffset handles empty overlaps
+        }
+        long nPixels = (long)(xEnd - xStart) * (yEnd - yStart);
+        long bound = IntegralImage.lowerBound(
+                aSums, bSums, xStart, yStart, xEnd, yEnd,
+                xOffset, yOffset, blocks
+        );
+        // normalizedDiff never decreases as its sum grows, so a bound
+        // beyond exclusionVal means the full diff is beyond it too.
+        return normalizedDiff(bound, nPixels) > exclusionVal;
     }
 
     /**
-     * Tool for iterating over corresponding pairs of pixels in
-     * two images.
-     * This class' iterator yields pairs of integers, each representing
-     * the rgb values of each pixel.
+     * As diffInRegion, for Imgs of which either is held in tiles:
+     * the overlap is walked a tile of otherImg at a time, so that
+     * each tile of either Img is read from its cache once per
+     * offset, rather than once per row. Rows are not interleaved.
+     * Luma comparisons compute luma as rows are read.
+     * @param otherImg: Img
+     * @param x0: int
+     * @param y0: int
+     * @param x1: int
+     * @param y1: int
+     * @param xOffset: int
+     * @param yOffset: int
+     * @param exclusionVal: float
+     * @param comparison: Comparison
+     * @param tally: SearchRecorder.Tally or null to count nothing
+     * @return float
      */
-    private final class PixelPairs implements Iterable<int[]>{
-
-        IPixelIterable aIterable;
-        IPixelIterable bIterable;
-
-        /**
-         * Constructor for PixelPairs iterable. This takes an A image
-         * and a B image, along with an offset
-         * @param imgA: Img
-         * @param imgB: Img
-         * @param xOffset: int
-         * @param yOffset: int
-         */
-        private PixelPairs(Img imgA, Img imgB, int xOffset, int yOffset){
-            if (imgA.getWidth() != imgB.getWidth() ||
-                    imgA.getHeight() != imgB.getWidth()){
-                throw new IllegalArgumentException(String.format(
-                        "Image A and Image B are of different sizes: " +
-                                "A: (%s, %s)  B: (%s, %s)",
-                        imgA.getWidth(), imgA.getHeight(),
-                        imgB.getWidth(), imgB.getHeight()
-                ));
+    private float diffInTiles(
+            Img otherImg,
+            int x0,
+            int y0,
+            int x1,
+            int y1,
+            int xOffset,
+            int yOffset,
+            float exclusionVal,
+            Comparison comparison,
+            SearchRecorder.Tally tally
+    ){
+        boolean luma = comparison == Comparison.LUMA;
+        // bounds of overlap, in coordinates of otherImg
+        int xStart = max(x0, -xOffset);
+        int xEnd = min(x1, getWidth() - xOffset);
+        int yStart = max(y0, -yOffset);
+        int yEnd = min(y1, getHeight() - yOffset);
+        if (xEnd <= xStart || yEnd <= yStart){
+            return 1f; // no overlap; nothing to compare
+        }
+        long nPixels = (long)(xEnd - xStart) * (yEnd - yStart);
+        int tile = max(tileSize(), otherImg.tileSize());
+        // tiles of otherImg holding the first and last pixels
+        int firstColumn = xStart / tile;
+        int firstRow = yStart / tile;
+        int columns = (xEnd - 1) / tile - firstColumn + 1;
+        int nTiles = ((yEnd - 1) / tile - firstRow + 1) * columns;
+        int[] aRow = rowBuffer(0, tile);
+        int[] bRow = rowBuffer(1, tile);
+        long cumulativeDiff = 0; // summed channel differences
+        long compared = 0;
+        for (int i = 0; i < nTiles; i++){
+            int tileX = (firstColumn + i % columns) * tile;
+            int tileY = (firstRow + i / columns) * tile;
+            int xFrom = max(xStart, tileX);
+            int length = min(xEnd, tileX + tile) - xFrom;
+            int yTo = min(yEnd, tileY + tile);
+            for (int y = max(yStart, tileY); y < yTo; y++){
+                copyRow(xFrom + xOffset, y + yOffset, length, aRow, 0);
+                otherImg.copyRow(xFrom, y, length, bRow, 0);
+                cumulativeDiff += luma ?
+                        3L * ColorUtil.sumAbsDiffLuma(
+                                aRow, 0, bRow, 0, length
+                        ) :
+                        ColorUtil.sumAbsDiffRGB(aRow, 0, bRow, 0, length);
+                compared += length;
+            }
+            if (normalizedDiff(cumulativeDiff, nPixels) > exclusionVal){
+                if (tally != null){
+                    tally.pruned(compared, i + 1, nTiles);
+                }
+                return 1f;
             }
-            aIterable = imgA.offsetPixels(xOffset, yOffset);
-            bIterable = imgB.pixels();
         }
-
-        public Iterator<int[]> iterator(){
-            return new PixelPairIterator(aIterable, bIterable);
+        if (tally != null){
+            tally.scanned(nPixels);
         }
+        return normalizedDiff(cumulativeDiff, nPixels);
+    }
 
-        class PixelPairIterator implements Iterator<int[]>{
-
-            IPixelIterator aIterator;
-            IPixelIterator bIterator;
-
-            private PixelPairIterator(
-                    IPixelIterable aIterable,
-                    IPixelIterable bIterable
-            ){
-                aIterator = aIterable.iterator();
-                bIterator = bIterable.iterator();
-            }
+    /**
+     * Returns average difference per pixel, from 0 to 1, of passed
+     * sum of absolute channel differences over nPixels pixels.
+     * diffAtOffset and its early exits all go through here, so that
+     * they agree exactly on ties.
+     * @param sumAbsDiff: long
+     * @param nPixels: long
+     * @return float
+     */
+    static float normalizedDiff(long sumAbsDiff, long nPixels){
+        return (float)(sumAbsDiff / (765.0 * nPixels));
+    }
 
-            public boolean hasNext(){
-                return aIterator.hasNonNullLeft() && bIterator.hasNext();
-            }
+    /**
+     * Returns per-channel summed-area tables of this Img, built on
+     * first use, or null if the Img is too large for them.
+     * @return IntegralImage or null
+     */
+    IntegralImage integralImage(){
+        IntegralImage tables = integral;
+        if (tables == null &&
+                (long)getWidth() * getHeight() < IntegralImage.MAX_PIXELS){
+            // building twice from racing threads is harmless;
+            // both produce identical tables.
+            tables = integral = IntegralImage.of(this);
+        }
+        return tables;
+    }
 
-            public int[] next(){
-                Integer aRGB;
-                Integer bRGB;
-                // loop until return
-                if (!aIterator.hasNonNullLeft() || !bIterator.hasNext()){
-                    // if there is no non-null left, raise iterator error
-                    throw new NoSuchElementException();
+    /**
+     * Returns luma of each pixel of this Img, one unsigned byte per
+     * pixel in row-major order, built on first use.
+     * The returned array is shared and must not be modified.
+     * @return byte[]
+     */
+    byte[] lumaPlane(){
+        byte[] plane = luma;
+        if (plane == null){
+            int width = getWidth();
+            int height = getHeight();
+            int[] row = new int[width];
+            plane = new byte[width * height];
+            for (int y = 0; y < height; y++){
+                copyRow(0, y, width, row, 0);
+                for (int x = 0; x < width; x++){
+                    plane[y * width + x] = (byte)ColorUtil.luma(row[x]);
                 }
-                // otherwise, iterate through iterators until a
-                // non-null pair is found.
-                do {
-                    aRGB = aIterator.next();
-                    bRGB = bIterator.next();
-                } while (aRGB == null);
-                return new int[] {aRGB, bRGB};
             }
+            // as with sums, racing threads build identical planes
+            luma = plane;
         }
+        return plane;
     }
 
-    private class SpiralCoordinates implements Iterable<int[]>{
-        private final int width, height;
-
-        /**
-         * Constructs spiral iterable.
-         * @param width: int
-         */
-        private SpiralCoordinates(int width, int height){
-            this.width = width;this.height = height;
+    /**
+     * Returns corner keypoints of this Img, up to maxKeypoints of
+     * them, detected on first use. Keypoints are kept until asked
+     * for with a different maximum, so that frames of a sequence,
+     * each searched against the frame before and after it, are only
+     * scanned for corners once.
+     * @param maxKeypoints: int
+     * @return FeatureSet
+     */
+    FeatureSet features(int maxKeypoints){
+        FeatureSet set = features;
+        if (set == null || set.maxKeypoints != maxKeypoints){
+            // as with sums, racing threads detect identical keypoints
+            set = features = FeatureSet.of(this, maxKeypoints);
         }
+        return set;
+    }
 
-        public Iterator<int[]> iterator(){
-            return new SpiralIterator(width, height);
+    /**
+     * Returns pyramid of this Img with up to nLevels levels. The
+     * deepest pyramid built is kept, so that images searched many
+     * times, such as those held by a FrameCache, are only
+     * downsampled once.
+     * @param nLevels: int
+     * @return ImgPyramid
+     */
+    ImgPyramid pyramid(int nLevels){
+        int size = ImgPyramid.levelCount(getWidth(), getHeight(), nLevels);
+        ImgPyramid levels = pyramid;
+        if (levels == null || levels.size() < size){
+            // as with sums, racing threads build identical pyramids
+            levels = pyramid = new ImgPyramid(this, size);
         }
+        return levels.truncated(size);
+    }
 
-        private class SpiralIterator implements Iterator<int[]>{
-            final int height;     // height of area to iterate in
-            final int width;      // width of area
-            int r;          // maximum radius of spiral
-            int x;          // current x position
-            int y;          // current y position
-            int dx;         // x motion
-            int dy;         // y motion
+    /**
+     * Returns number of bytes this Img may hold once its sums, luma
+     * and a full pyramid have been built: the raster, summed-area
+     * tables and luma plane of each level, with the levels below
+     * level 0 adding at most a third.
+     * @return long
+     */
+    long retainedBytesBound(){
+        long width = getWidth();
+        long height = getHeight();
+        long raster = 4 * width * height;
+        long sums = 12 * (width + 1) * (height + 1);
+        long luma = width * height;
+        return (raster + sums + luma) * 4 / 3;
+    }
 
-            private SpiralIterator(int width, int height){
-                this.width = width;
-                this.height = height;
-                x = y = 0;
-                dx = 0;
-                dy = -1;
-                // set radius. Feels like there should be a simpler way
-                r = (int)Math.ceil((double)max(width, height)/2);
-            }
+    /**
+     * Checks that offset passed is smaller than size of Img.
+     * If not, raises a ValueError
+     * @param xOffset: int
+     * @param yOffset: int
+     */
+    void validateOffsets(int xOffset, int yOffset){
+        if (xOffset > getWidth() || yOffset > getHeight()){
+            throw new IllegalArgumentException(String.format(
+                    "Passed offset is greater than size of image." +
+                            "Offsets: %s, %s  Image size: %s, %s",
+                    xOffset, yOffset, getWidth(), getHeight()
+            ));
+        }
+    }
 
-            public boolean hasNext(){
-                return x <= r && y <= r;
-            }
+    /**
+     * Returns packed RGB values of this Img in row-major order;
+     * pixel (x, y) is at index y * getWidth() + x, or null if the
+     * Img is too large for one array, as a TiledImg is; such Imgs
+     * are read through copyRow.
+     * The returned array is shared and must not be modified.
+     * Imgs without a packed raster of their own build one on first
+     * call; see hasRaster().
+     * @return int[] or null
+     */
+    abstract int[] rgbRaster();
 
-            public int[] next(){
-                // if position x,y is outside bounds:
-                if (abs(x) > width / 2 || abs(y) > height / 2){
-                    // change current position, depending on dx, dy
-                    if (dx != 0){
-                        y = x * dx;
-                        dx = dx * -1;
-                    } else if (dy == 1){
-                        x = -y;
-                        dy = -1;
-                    } else {
-                        x = -y + 1;
-                        dy = 1;
-                    }
-                    // increment position
-                    x += dx;
-                    y += dy;
-                    // check that position is within bounds
-                    if (abs(x) > r || abs(y) > r){
-                        throw new NoSuchElementException();
-                    }
-                }
-                int[] pos = {x, y};
-                // check if direction needs to be changed
-                if ((x == y )                       // lower left, upper right corners
-                        || (x < 0 && x == -y) ||    // upper left corner
-                        (x > 0 && x == 1 - y)) {    // lower right, increment radius
-                    int dx1 = dy * -1;   // change directions
-                    dy = dx;
-                    dx = dx1;
-                }
-                x += dx;
-                y += dy;
-                return pos;
-            }
-        }
+    /**
+     * Returns edge length of the square tiles this Img is held in,
+     * or 0 if it is not held in tiles. Tiled Imgs are compared tile
+     * by tile, and have no summed-area tables or luma plane.
+     * @return int
+     */
+    int tileSize(){
+        return 0;
     }
 
-    /** Holds data used to calculate difference fraction at offset in parallel */
-    private class EvaluationData {
-        private float leastDiff;
-        private float[] bestOffset;
-        private final Iterator<int[]> offsetIterator;
-        private final Img img;
-        private int nLiveThreads;
+    /**
+     * Returns whether rgbRaster() is this Img's own storage, rather
+     * than a copy built on request. Comparisons read Imgs without
+     * one row by row through copyRow instead.
+     * @return boolean
+     */
+    boolean hasRaster(){
+        return true;
+    }
 
-        private EvaluationData(Img comparisonImg, float xGate, float yGate){
-            leastDiff = 1f;
-            img = comparisonImg;
-            offsetIterator = new SpiralCoordinates(
-                    (int)xGate * 2,
-                    (int)yGate * 2
-            ).iterator();
+    /**
+     * Copies length pixels of row y, from x onwards, into dst as
+     * packed RGB values. Imgs whose rgbRaster() may be null read
+     * their own storage here instead.
+     * @param x: int
+     * @param y: int
+     * @param length: int
+     * @param dst: int[]
+     * @param dstIndex: int index in dst of first pixel
+     */
+    void copyRow(int x, int y, int length, int[] dst, int dstIndex){
+        System.arraycopy(
+                rgbRaster(), y * getWidth() + x, dst, dstIndex, length
+        );
+    }
+
+    /**
+     * Returns one of the row buffers of the calling thread, with at
+     * least passed length.
+     * @param which: int 0 or 1
+     * @param length: int
+     * @return int[]
+     */
+    static int[] rowBuffer(int which, int length){
+        int[][] buffers = rowBuffers.get();
+        if (buffers[which].length < length){
+            buffers[which] = new int[length];
         }
+        return buffers[which];
     }
 }
@@ -0,0 +1,115 @@
+package img;
+
+/**
+ * Sequence of progressively downsampled copies of an Img.
+ * Level 0 is the source image; each following level has half of
+ * the width and height of the level before it.
+ */
+final class ImgPyramid {
+    // levels are not built once either side would drop below this size
+    static final int MIN_LEVEL_SIZE = 16;
+
+    private final Img[] levels;
+
+    /**
+     * Builds pyramid with up to nLevels levels, including the
+     * source image.
+     * @param src: Img
+     * @param nLevels: int
+     */
+    ImgPyramid(Img src, int nLevels){
+        levels = new Img[levelCount(src.getWidth(), src.getHeight(), nLevels)];
+        levels[0] = src;
+        for (int i = 1; i < levels.length; i++){
+            levels[i] = halfSize(levels[i - 1]);
+        }
+    }
+
+    private ImgPyramid(Img[] levels){
+        this.levels = levels;
+    }
+
+    /**
+     * Returns pyramid of the first nLevels levels of this one,
+     * sharing their images.
+     * @param nLevels: int, at most size()
+     * @return ImgPyramid
+     */
+    ImgPyramid truncated(int nLevels){
+        if (nLevels == levels.length){
+            return this;
+        }
+        Img[] shared = new Img[nLevels];
+        System.arraycopy(levels, 0, shared, 0, nLevels);
+        return new ImgPyramid(shared);
+    }
+
+    /**
+     * Returns number of levels that can be built for an image of
+     * passed size, without exceeding nLevels.
+     * @param width: int
+     * @param height: int
+     * @param nLevels: int
+     * @return int
+     */
+    static int levelCount(int width, int height, int nLevels){
+        int count = 1;
+        while (count < nLevels &&
+                width / 2 >= MIN_LEVEL_SIZE &&
+                height / 2 >= MIN_LEVEL_SIZE){
+            width /= 2;
+            height /= 2;
+            count++;
+        }
+        return count;
+    }
+
+    int size(){
+        return levels.length;
+    }
+
+    Img level(int i){
+        return levels[i];
+    }
+
+    /**
+     * Returns copy of passed Img with half its width and height,
+     * each pixel being the per-channel average of a 2x2 block.
+     * Copies of tiled Imgs are tiled too, and built a row at a time.
+     * @param src: Img
+     * @return Img
+     */
+    static Img halfSize(Img src){
+        int srcWidth = src.getWidth();
+        int width = srcWidth / 2;
+        int height = src.getHeight() / 2;
+        int[] top = new int[srcWidth];
+        int[] bottom = new int[srcWidth];
+        TiledImg tiled = src.tileSize() > 0 ?
+                ((TiledImg)src).smaller(width, height) : null;
+        int[] rgb = tiled == null ? new int[width * height] : new int[width];
+        for (int y = 0; y < height; y++){
+            src.copyRow(0, 2 * y, srcWidth, top, 0);
+            src.copyRow(0, 2 * y + 1, srcWidth, bottom, 0);
+            int index = tiled == null ? y * width : 0;
+            for (int x = 0; x < width; x++){
+                int a = top[2 * x];
+                int b = top[2 * x + 1];
+                int c = bottom[2 * x];
+                int d = bottom[2 * x + 1];
+                // +2 rounds the four-pixel average to nearest
+                int r = (ColorUtil.r(a) + ColorUtil.r(b) +
+                        ColorUtil.r(c) + ColorUtil.r(d) + 2) >> 2;
+                int g = (ColorUtil.g(a) + ColorUtil.g(b) +
+                        ColorUtil.g(c) + ColorUtil.g(d) + 2) >> 2;
+                int bl = (ColorUtil.b(a) + ColorUtil.b(b) +
+                        ColorUtil.b(c) + ColorUtil.b(d) + 2) >> 2;
+                rgb[index + x] = 0xFF000000 | r << 16 | g << 8 | bl;
+            }
+            if (tiled != null){
+                tiled.writeRow(y, rgb, 0);
+            }
+        }
+        return tiled == null ? new RasterImg(width, height, rgb) : tiled;
+    }
+}
@@ -0,0 +1,51 @@
+package img;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs a task once for each index from 0 to n, exclusive, sharing
+ * the indices between every thread taking part.
+ * Once any task throws, no further tasks are started; the first
+ * failure is kept for the thread that started the work to rethrow.
+ */
+final class IndexedWork extends SharedWork {
+    private final int n;
+    private final IntConsumer task;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final AtomicReference<RuntimeException> failure =
+            new AtomicReference<>();
+
+    /**
+     * Creates work running passed task for each of n indices.
+     * @param n: int
+     * @param task: IntConsumer
+     */
+    IndexedWork(int n, IntConsumer task){
+        this.n = n;
+        this.task = task;
+    }
+
+    @Override
+    void work(){
+        int index;
+        while (failure.get() == null &&
+                (index = cursor.getAndIncrement()) < n){
+            try {
+                task.accept(index);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the first exception thrown by a task, or null.
+     * Only valid once every thread has finished.
+     * @return RuntimeException or null
+     */
+    RuntimeException failure(){
+        return failure.get();
+    }
+}
@@ -0,0 +1,128 @@
+package img;
+
+/**
+ * Per-channel summed-area tables of an Img.
+ * Entry (x, y) of each table holds the sum of that channel over
+ * every pixel above and to the left of (x, y), so the sum over any
+ * rectangle takes four lookups.
+ * Sums are kept in ints and read back as unsigned, which is exact
+ * for images of fewer than MAX_PIXELS pixels.
+ */
+final class IntegralImage {
+    // largest image whose channel sums fit in 32 unsigned bits
+    static final long MAX_PIXELS = 0xFFFFFFFFL / 255;
+
+    private final int stride;   // width + 1
+    // red, green and blue sums, interleaved per entry
+    private final int[] sums;
+
+    private IntegralImage(Img img){
+        int width = img.getWidth();
+        stride = width + 1;
+        int height = img.getHeight();
+        int[] row = new int[width];
+        sums = new int[3 * stride * (height + 1)];
+        for (int y = 0; y < height; y++){
+            img.copyRow(0, y, width, row, 0);
+            int r = 0, g = 0, b = 0;    // sums along this row so far
+            int above = 3 * (y * stride + 1);
+            int entry = above + 3 * stride;
+            for (int x = 0; x < width; x++){
+                int color = row[x];
+                r += ColorUtil.r(color);
+                g += ColorUtil.g(color);
+                b += ColorUtil.b(color);
+                sums[entry++] = sums[above++] + r;
+                sums[entry++] = sums[above++] + g;
+                sums[entry++] = sums[above++] + b;
+            }
+        }
+    }
+
+    /**
+     * Builds tables for passed Img, or returns null if the Img is
+     * too large for exact int sums.
+     * @param img: Img
+     * @return IntegralImage or null
+     */
+    static IntegralImage of(Img img){
+        if ((long)img.getWidth() * img.getHeight() >= MAX_PIXELS){
+            return null;
+        }
+        return new IntegralImage(img);
+    }
+
+    /**
+     * Returns a lower bound on the summed absolute channel
+     * differences between the two images at an offset, as used by
+     * Img.diffAtOffset: pixel (x, y) of b against pixel
+     * (x + xOffset, y + yOffset) of a.
+     * The overlap is split into blocks x blocks rectangles; the
+     * bound is the sum, over each rectangle and channel, of
+     * abs(sum in a - sum in b). More blocks give a tighter bound.
+     * @param a: IntegralImage
+     * @param b: IntegralImage
+     * @param xStart: int left of overlap, in coordinates of b
+     * @param yStart: int top of overlap, in coordinates of b
+     * @param xEnd: int right of overlap, exclusive
+     * @param yEnd: int bottom of overlap, exclusive
+     * @param xOffset: int
+     * @param yOffset: int
+     * @param blocks: int at least 1
+     * @return long
+     */
+    static long lowerBound(
+            IntegralImage a,
+            IntegralImage b,
+            int xStart,
+            int yStart,
+            int xEnd,
+            int yEnd,
+            int xOffset,
+            int yOffset,
+            int blocks
+    ){
+        int overlapWidth = xEnd - xStart;
+        int overlapHeight = yEnd - yStart;
+        long bound = 0;
+        for (int j = 0; j < blocks; j++){
+            int y0 = yStart + (int)((long)overlapHeight * j / blocks);
+            int y1 = yStart + (int)((long)overlapHeight * (j + 1) / blocks);
+            if (y1 == y0){
+                continue;
+            }
+            for (int i = 0; i < blocks; i++){
+                int x0 = xStart + (int)((long)overlapWidth * i / blocks);
+                int x1 = xStart + (int)((long)overlapWidth * (i + 1) / blocks);
+                if (x1 == x0){
+                    continue;
+                }
+                for (int c = 0; c < 3; c++){
+                    long sumA = a.sum(
+                            c, x0 + xOffset, y0 + yOffset,
+                            x1 + xOffset, y1 + yOffset
+                    );
+                    long sumB = b.sum(c, x0, y0, x1, y1);
+                    bound += Math.abs(sumA - sumB);
+                }
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Returns sum of a channel over the rectangle from (x0, y0) to
+     * (x1, y1), exclusive.
+     * @param channel: int 0, 1, 2 for red, green, blue
+     * @return long
+     */
+    private long sum(int channel, int x0, int y0, int x1, int y1){
+        int top = 3 * (y0 * stride) + channel;
+        int bottom = 3 * (y1 * stride) + channel;
+        // differences wrap around, but the true sum fits in 32
+        // unsigned bits, so the wrapped result is still exact.
+        int sum = sums[bottom + 3 * x1] - sums[bottom + 3 * x0] -
+                sums[top + 3 * x1] + sums[top + 3 * x0];
+        return Integer.toUnsignedLong(sum);
+    }
+}
@@ -0,0 +1,80 @@
+package img;
+
+/**
+ * Motion vectors of a grid of blocks covering an image, as found by
+ * Tracker.motionField.
+ * Block (column, row) spans x from width * column / columns to
+ * width * (column + 1) / columns, and likewise for y.
+ * Vectors and scores are kept in flat primitive arrays, row-major.
+ */
+public final class MotionField {
+    private final int columns;
+    private final int rows;
+    private final float[] vectors;  // x, y per block
+    private final float[] scores;   // diff at vector, 0 to 1
+
+    MotionField(int columns, int rows, float[] vectors, float[] scores){
+        this.columns = columns;
+        this.rows = rows;
+        this.vectors = vectors;
+        this.scores = scores;
+    }
+
+    public int getColumns(){
+        return columns;
+    }
+
+    public int getRows(){
+        return rows;
+    }
+
+    /**
+     * Returns x motion of a block
+     * @param column: int
+     * @param row: int
+     * @return float
+     */
+    public float getX(int column, int row){
+        return vectors[2 * index(column, row)];
+    }
+
+    /**
+     * Returns y motion of a block
+     * @param column: int
+     * @param row: int
+     * @return float
+     */
+    public float getY(int column, int row){
+        return vectors[2 * index(column, row) + 1];
+    }
+
+    /**
+     * Returns diff of a block at its motion vector, as a fraction of
+     * the largest possible difference.
+     * @param column: int
+     * @param row: int
+     * @return float from 0 to 1 inclusive
+     */
+    public float getScore(int column, int row){
+        return scores[index(column, row)];
+    }
+
+    /**
+     * Returns copy of all motion vectors, as x, y pairs in row-major
+     * block order.
+     * @return float[2 * columns * rows]
+     */
+    public float[] toArray(){
+        return vectors.clone();
+    }
+
+    private int index(int column, int row){
+        if (column < 0 || column >= columns || row < 0 || row >= rows){
+            throw new IndexOutOfBoundsException(String.format(
+                    "Block (%s, %s) is outside of %s x %s grid",
+                    column, row, columns, rows
+            ));
+        }
+        return row * columns + column;
+    }
+}
@@ -0,0 +1,28 @@
+package img;
+
+/**
+ * Predicts the motion between upcoming pairs of frames from the
+ * motions observed so far, so that searches can start from, and
+ * be limited to, the neighbourhood of the prediction.
+ * A FrameSequence calls predict() and searchRadius() before each
+ * pair, and observe() with the motion found for it.
+ */
+public interface MotionPredictor {
+    /**
+     * Returns predicted motion for the next pair.
+     * @return float[2] (x, y) or null if there is no prediction yet
+     */
+    float[] predict();
+
+    /**
+     * Returns distance from the prediction to search on each axis.
+     * @return int[2] (x, y) or null to search the whole gate
+     */
+    int[] searchRadius();
+
+    /**
+     * Records motion found for the pair last predicted.
+     * @param motion: float[2] (x, y)
+     */
+    void observe(float[] motion);
+}
@@ -0,0 +1,60 @@
+package img;
+
+/**
+ * Outcome of a Tracker.appMotionResult or appMotionAsync call.
+ * A search that reached its deadline before examining every
+ * candidate offset is incomplete; its motion is the best offset
+ * among those it did examine. Spiral searches examine the offsets
+ * nearest their start first, so an incomplete result is often
+ * still the true motion.
+ */
+public final class MotionResult {
+    private final float[] motion;
+    private final boolean complete;
+    private final float confidence;
+
+    MotionResult(float[] motion, boolean complete, float confidence){
+        this.motion = motion;
+        this.complete = complete;
+        this.confidence = confidence;
+    }
+
+    /**
+     * Returns motion found.
+     * @return float[2] (x, y) copy, or null if no offset was
+     *      compared before the deadline, or none matched
+     */
+    public float[] getMotion(){
+        return motion == null ? null : motion.clone();
+    }
+
+    /**
+     * Returns whether every candidate offset was examined.
+     * @return boolean
+     */
+    public boolean isComplete(){
+        return complete;
+    }
+
+    /**
+     * Returns how distinct the match at the motion found is, from 0
+     * where neighbouring offsets match about as well, as along an
+     * edge or in a flat area, to 1 for a close match with no close
+     * neighbour. Rated with sub-pixel refinement enabled, by every
+     * search mode but phase correlation; see SearchOptions.setSubPixel.
+     * @return float in [0, 1], or NaN if not rated
+     */
+    public float getConfidence(){
+        return confidence;
+    }
+
+    @Override
+    public String toString(){
+        return String.format(
+                "MotionResult(%s, %s, confidence %s)",
+                motion == null ? "none" : motion[0] + ", " + motion[1],
+                complete ? "complete" : "incomplete",
+                confidence
+        );
+    }
+}
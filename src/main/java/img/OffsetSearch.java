@@ -0,0 +1,224 @@
+package img;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.Math.abs;
+
+/**
+ * State of a single spiral search for the offset with least
+ * difference between two images.
+ * Offsets are handed out in chunks of consecutive spiral positions
+ * through an atomic cursor, and the best score found so far is
+ * published atomically, so every thread prunes against the current
+ * global best. Among offsets with equal diff, the one earliest in
+ * the spiral wins, whatever the number of threads.
+ */
+final class OffsetSearch extends SharedWork {
+    // most offsets handed to a thread at once
+    private static final int MAX_CHUNK = 64;
+    // bits of the spiral index in a packed best value; the float
+    // bits of a diff from 0 to 1 fit in the 30 bits above them
+    static final int INDEX_BITS = 33;
+    // mask of the spiral index in a packed best value, also used as
+    // the index of no offset
+    static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+    private final SpiralCoordinates spiral;
+    private final long nOffsets;
+    private final int chunk;
+    private final AtomicLong cursor = new AtomicLong();
+    // float bits of least diff in the upper bits, spiral index of
+    // the offset that produced it in the lower. Diffs are never
+    // negative, so the smaller long is the better (diff, index) pair.
+    private final AtomicLong best =
+            new AtomicLong(pack(1f, INDEX_MASK));
+    private final Img imgA;
+    private final Img imgB;
+    private final int xCenter, yCenter;
+    private final int xLimit, yLimit;
+    private final int eliminationBlocks;
+    private final Comparison comparison;
+    private final boolean interleaved;
+    private final SearchCall call;
+
+    /**
+     * Creates search around a center offset.
+     * Offsets beyond xLimit or yLimit on either axis are skipped.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param xCenter: int
+     * @param yCenter: int
+     * @param xGate: int distance from center to search along x
+     * @param yGate: int distance from center to search along y
+     * @param xLimit: int
+     * @param yLimit: int
+     * @param parallelism: int number of threads expected to help
+     * @param options: SearchOptions
+     * @param call: SearchCall the search is run for
+     */
+    OffsetSearch(
+            Img imgA,
+            Img imgB,
+            int xCenter,
+            int yCenter,
+            int xGate,
+            int yGate,
+            int xLimit,
+            int yLimit,
+            int parallelism,
+            SearchOptions options,
+            SearchCall call
+    ){
+        this.imgA = imgA;
+        this.imgB = imgB;
+        this.xCenter = xCenter;
+        this.yCenter = yCenter;
+        this.xLimit = xLimit;
+        this.yLimit = yLimit;
+        comparison = options.getComparison();
+        // channel sums only bound RGB diffs
+        eliminationBlocks = comparison == Comparison.RGB ?
+                options.getEliminationBlocks() : 0;
+        interleaved = options.isInterleavedScan();
+        this.call = call;
+        spiral = spiral(xGate, yGate);
+        nOffsets = spiral.size();
+        // small enough chunks that threads finish close together, and
+        // that the first threads start on the smallest offsets.
+        chunk = (int)Math.max(
+                1, Math.min(MAX_CHUNK, nOffsets / (parallelism * 32L))
+        );
+    }
+
+    /**
+     * Returns the best offset found. Only valid once every thread
+     * working on the search has finished.
+     * @return float[2] (x, y) or null if no offset could be compared
+     */
+    float[] result(){
+        long index = bestIndex();
+        if (index < 0){
+            return null;
+        }
+        int[] xy = new int[2];
+        spiral.locate(index, xy);
+        return new float[] {
+                (float)(xCenter + xy[0]), (float)(yCenter + xy[1])
+        };
+    }
+
+    /**
+     * Returns diff at the best offset found, or 1 if no offset could
+     * be compared. Only valid once every thread has finished.
+     * @return float
+     */
+    float bestDiff(){
+        return diffOf(best.get());
+    }
+
+    private long bestIndex(){
+        long index = best.get() & INDEX_MASK;
+        return index == INDEX_MASK ? -1 : index;
+    }
+
+    /**
+     * Evaluation loop that is run by each thread evaluating
+     * different offsets.
+     */
+    @Override
+    void work(){
+        SearchRecorder.Tally tally = call.tally();
+        int[] xy = new int[2];
+        while (true){
+            long start = cursor.getAndAdd(chunk);
+            if (start >= nOffsets){
+                return;
+            }
+            long end = Math.min(nOffsets, start + chunk);
+            for (long i = start; i < end; i++){
+                if (call.stopRequested()){
+                    call.markTruncated();
+                    return;
+                }
+                evaluateOffset(i, xy, tally);
+            }
+        }
+    }
+
+    /**
+     * Evaluates offset at passed spiral index to see what the
+     * difference ratio is, and publishes it if it beats the best.
+     * @param index: long index of offset in spiral order
+     * @param xy: int[2] buffer of the calling thread
+     * @param tally: SearchRecorder.Tally or null
+     */
+    private void evaluateOffset(
+            long index,
+            int[] xy,
+            SearchRecorder.Tally tally
+    ){
+        spiral.locate(index, xy);
+        int x = xCenter + xy[0];
+        int y = yCenter + xy[1];
+        if (abs(x) > xLimit || abs(y) > yLimit){
+            return;
+        }
+        float leastDiff = diffOf(best.get());
+        if (eliminationBlocks > 0 && imgA.excludedBySums(
+                imgB, x, y, leastDiff, eliminationBlocks)){
+            if (tally != null){
+                tally.excluded();
+            }
+            return; // cannot beat the best; skip scanning pixels
+        }
+        float diff = imgA.diffInRegion(
+                imgB, 0, 0, imgB.getWidth(), imgB.getHeight(),
+                x, y, leastDiff, comparison, interleaved, tally
+        );
+        // offsets that were excluded early, or that share nothing,
+        // score 1 and are never candidates.
+        if (diff < 1f && diff <= leastDiff){
+            best.accumulateAndGet(pack(diff, index), Math::min);
+        }
+    }
+
+    /**
+     * Packs diff and spiral index of an offset into a long, ordered
+     * by diff and then by index.
+     * @param diff: float from 0 to 1
+     * @param index: long
+     * @return long
+     */
+    static long pack(float diff, long index){
+        return (long)Float.floatToIntBits(diff) << INDEX_BITS |
+                (index & INDEX_MASK);
+    }
+
+    /**
+     * Returns diff of a packed (diff, index) pair.
+     * @param packed: long
+     * @return float
+     */
+    static float diffOf(long packed){
+        return Float.intBitsToFloat((int)(packed >>> INDEX_BITS));
+    }
+
+    /**
+     * Returns spiral of the offsets of a search window, checking that
+     * each has an index that can be packed.
+     * @param xGate: int
+     * @param yGate: int
+     * @return SpiralCoordinates
+     */
+    static SpiralCoordinates spiral(int xGate, int yGate){
+        SpiralCoordinates spiral =
+                new SpiralCoordinates(xGate * 2, yGate * 2);
+        if (spiral.size() >= INDEX_MASK){
+            throw new IllegalArgumentException(String.format(
+                    "Gates of %s, %s span too many offsets to search",
+                    xGate, yGate
+            ));
+        }
+        return spiral;
+    }
+}
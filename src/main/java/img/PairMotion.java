@@ -0,0 +1,42 @@
+package img;
+
+/**
+ * Apparent motion between two images of a batch matched by
+ * Tracker.matchPairs, identified by their indices in the batch.
+ */
+public final class PairMotion {
+    private final int indexA;
+    private final int indexB;
+    private final float[] motion;
+
+    PairMotion(int indexA, int indexB, float[] motion){
+        this.indexA = indexA;
+        this.indexB = indexB;
+        this.motion = motion;
+    }
+
+    public int getIndexA(){
+        return indexA;
+    }
+
+    public int getIndexB(){
+        return indexB;
+    }
+
+    /**
+     * Returns motion of image B relative to image A, as returned
+     * by Tracker.appMotion for the pair.
+     * @return float[2] (x, y) copy, or null if no offset matched
+     */
+    public float[] getMotion(){
+        return motion == null ? null : motion.clone();
+    }
+
+    @Override
+    public String toString(){
+        return String.format(
+                "PairMotion(%s, %s: %s)", indexA, indexB,
+                motion == null ? "none" : motion[0] + ", " + motion[1]
+        );
+    }
+}
@@ -0,0 +1,173 @@
+package img;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.min;
+
+/**
+ * Estimates the translation between two images from the peak of
+ * their phase correlation surface.
+ * Cost depends on image size only, not on the size of the gates.
+ */
+final class PhaseCorrelation {
+    private PhaseCorrelation(){}
+
+    /**
+     * Returns offset (x, y) such that pixel (x', y') of imgB best
+     * matches pixel (x' + x, y' + y) of imgA, the same convention
+     * as Img.appMotion.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param xGate: int
+     * @param yGate: int
+     * @param options: SearchOptions
+     * @return float[2] (x, y)
+     */
+    static float[] appMotion(
+            Img imgA,
+            Img imgB,
+            int xGate,
+            int yGate,
+            SearchOptions options
+    ){
+        int width = Fft.nextPowerOfTwo(imgA.getWidth());
+        int height = Fft.nextPowerOfTwo(imgA.getHeight());
+        double[] aRe = new double[width * height];
+        double[] aIm = new double[width * height];
+        double[] bRe = new double[width * height];
+        double[] bIm = new double[width * height];
+        boolean windowed = options.isWindowed();
+        load(imgA, aRe, width, windowed);
+        load(imgB, bRe, width, windowed);
+        Fft.transform2D(aRe, aIm, width, height, false);
+        Fft.transform2D(bRe, bIm, width, height, false);
+        // normalized cross power spectrum A * conj(B), stored in a.
+        // B(x, y) == A(x + dx, y + dy) puts its peak at (dx, dy).
+        for (int i = 0; i < aRe.length; i++){
+            double re = aRe[i] * bRe[i] + aIm[i] * bIm[i];
+            double im = aIm[i] * bRe[i] - aRe[i] * bIm[i];
+            double magnitude = Math.sqrt(re * re + im * im);
+            if (magnitude > 1e-12){
+                aRe[i] = re / magnitude;
+                aIm[i] = im / magnitude;
+            } else {
+                aRe[i] = aIm[i] = 0;
+            }
+        }
+        Fft.transform2D(aRe, aIm, width, height, true);
+        // shifts larger than half the padded size alias to negatives
+        int xReach = width / 2 - 1;
+        int yReach = height / 2 - 1;
+        if (options.isRestrictedToGate()){
+            xReach = min(xReach, xGate);
+            yReach = min(yReach, yGate);
+        }
+        int bestX = 0;
+        int bestY = 0;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int y = -yReach; y <= yReach; y++){
+            int row = wrap(y, height) * width;
+            for (int x = -xReach; x <= xReach; x++){
+                double value = aRe[row + wrap(x, width)];
+                // ties are resolved towards the smaller shift,
+                // as the spiral search does.
+                if (value > bestValue || (value == bestValue &&
+                        abs(x) + abs(y) < abs(bestX) + abs(bestY))){
+                    bestValue = value;
+                    bestX = x;
+                    bestY = y;
+                }
+            }
+        }
+        float[] offset = {(float)bestX, (float)bestY};
+        if (options.isSubPixel()){
+            int row = wrap(bestY, height) * width;
+            offset[0] += peakOffset(
+                    aRe[row + wrap(bestX - 1, width)],
+                    bestValue,
+                    aRe[row + wrap(bestX + 1, width)]
+            );
+            int column = wrap(bestX, width);
+            offset[1] += peakOffset(
+                    aRe[wrap(bestY - 1, height) * width + column],
+                    bestValue,
+                    aRe[wrap(bestY + 1, height) * width + column]
+            );
+        }
+        return offset;
+    }
+
+    /**
+     * Writes mean-subtracted luma of passed Img into the top left of
+     * a row-major grid, optionally tapered by a Hann window so that
+     * image borders do not dominate the correlation.
+     * @param img: Img
+     * @param grid: double[]
+     * @param gridWidth: int
+     * @param windowed: boolean
+     */
+    private static void load(
+            Img img,
+            double[] grid,
+            int gridWidth,
+            boolean windowed
+    ){
+        int width = img.getWidth();
+        int height = img.getHeight();
+        int[] row = new int[width];
+        double sum = 0;
+        for (int y = 0; y < height; y++){
+            img.copyRow(0, y, width, row, 0);
+            for (int x = 0; x < width; x++){
+                int luma = ColorUtil.luma(row[x]);
+                grid[y * gridWidth + x] = luma;
+                sum += luma;
+            }
+        }
+        double mean = sum / ((double)width * height);
+        double[] xWindow = hann(width, windowed);
+        double[] yWindow = hann(height, windowed);
+        for (int y = 0; y < height; y++){
+            for (int x = 0; x < width; x++){
+                int i = y * gridWidth + x;
+                grid[i] = xWindow[x] * yWindow[y] * (grid[i] - mean);
+            }
+        }
+    }
+
+    /**
+     * Returns Hann window weights of passed length, or all ones if
+     * windowing is disabled.
+     * @param n: int
+     * @param windowed: boolean
+     * @return double[]
+     */
+    private static double[] hann(int n, boolean windowed){
+        double[] weights = new double[n];
+        for (int i = 0; i < n; i++){
+            weights[i] = windowed && n > 1 ?
+                    0.5 - 0.5 * Math.cos(2 * Math.PI * i / (n - 1)) : 1;
+        }
+        return weights;
+    }
+
+    /**
+     * Returns position of vertex of the parabola through three
+     * equally spaced samples, relative to the center sample.
+     * @param left: double
+     * @param center: double
+     * @param right: double
+     * @return float in [-0.5, 0.5]
+     */
+    static float peakOffset(double left, double center, double right){
+        double curvature = left - 2 * center + right;
+        if (curvature >= 0){
+            return 0f; // center is not a strict maximum; no vertex
+        }
+        double delta = 0.5 * (left - right) / curvature;
+        return (float)Math.max(-0.5, Math.min(0.5, delta));
+    }
+
+    private static int wrap(int i, int n){
+        return ((i % n) + n) % n;
+    }
+}
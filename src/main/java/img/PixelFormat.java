@@ -0,0 +1,26 @@
+package img;
+
+/**
+ * Layouts of pixels in byte buffers wrapped by Img.wrap and
+ * Img.map: the order of channels within each pixel, with 8 bits
+ * per channel. Alpha is ignored.
+ */
+public enum PixelFormat {
+    RGB(3),
+    BGR(3),
+    RGBA(4),
+    BGRA(4),
+    ARGB(4),
+    /** single luma channel, compared as a grey RGB pixel */
+    GRAY(1);
+
+    final int bytesPerPixel;
+
+    PixelFormat(int bytesPerPixel){
+        this.bytesPerPixel = bytesPerPixel;
+    }
+
+    public int getBytesPerPixel(){
+        return bytesPerPixel;
+    }
+}
@@ -0,0 +1,185 @@
+package img;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Fixed, evenly spread subset of the pixels of an image: one pixel
+ * from each step x step cell of a grid over it. Each band of step
+ * rows contributes one row, and that row every step-th pixel, at a
+ * row and phase that are a hash of the band, so that the sample
+ * does not alias with regular patterns in the image, yet is the
+ * same for every offset scored with it.
+ * Sampling whole rows keeps memory access sequential, and lets the
+ * number of samples in any overlap be counted without reading
+ * them, so that scoring can stop early as Img.diffAtOffset does.
+ */
+final class PixelSample {
+    private final int step;
+    private final int[] rows;     // sampled row of each band
+    private final int[] phases;   // x of first sample of each row
+
+    /**
+     * Creates sample of an image of passed size.
+     * @param width: int
+     * @param height: int
+     * @param step: int side of each cell, at least 1
+     */
+    PixelSample(int width, int height, int step){
+        this.step = step;
+        int bands = (height + step - 1) / step;
+        rows = new int[bands];
+        phases = new int[bands];
+        for (int band = 0; band < bands; band++){
+            int hash = mix(band);
+            // the last band may be partial
+            int bandHeight = min(step, height - band * step);
+            rows[band] = band * step + (hash & 0xFFFF) % bandHeight;
+            phases[band] = (hash >>> 16) % step;
+        }
+    }
+
+    /**
+     * Returns diff between imgA and imgB at an offset, as
+     * Img.diffAtOffset would, but over sampled pixels of imgB only.
+     * If the diff is found to exceed exclusionVal, returns 1.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param xOffset: int
+     * @param yOffset: int
+     * @param exclusionVal: float
+     * @param comparison: Comparison
+     * @param tally: SearchRecorder.Tally or null
+     * @return float, or 1 if no sampled pixel is in the overlap
+     */
+    float diff(
+            Img imgA,
+            Img imgB,
+            int xOffset,
+            int yOffset,
+            float exclusionVal,
+            Comparison comparison,
+            SearchRecorder.Tally tally
+    ){
+        int width = imgB.getWidth();
+        int height = imgB.getHeight();
+        boolean luma = comparison == Comparison.LUMA;
+        // tiled images have no luma planes; theirs is computed per row
+        boolean planes = luma && imgA.tileSize() == 0 && imgB.tileSize() == 0;
+        byte[] aLuma = planes ? imgA.lumaPlane() : null;
+        byte[] bLuma = planes ? imgB.lumaPlane() : null;
+        // images without a packed raster have the overlap of each
+        // sampled row converted into a row buffer
+        int[] aRaster = planes || !imgA.hasRaster() ? null : imgA.rgbRaster();
+        int[] bRaster = planes || !imgB.hasRaster() ? null : imgB.rgbRaster();
+        // bounds of overlap, in coordinates of imgB
+        int xStart = max(0, -xOffset);
+        int xEnd = min(width, width - xOffset);
+        int yStart = max(0, -yOffset);
+        int yEnd = min(height, height - yOffset);
+        if (xEnd <= xStart || yEnd <= yStart){
+            return 1f;
+        }
+        int firstBand = yStart / step;
+        int endBand = (yEnd - 1) / step + 1;
+        long nSampled = 0;
+        for (int band = firstBand; band < endBand; band++){
+            if (rows[band] >= yStart && rows[band] < yEnd){
+                nSampled += count(firstX(band, xStart), xEnd);
+            }
+        }
+        if (nSampled == 0){
+            return 1f;
+        }
+        int rowLength = xEnd - xStart;
+        int[] aRow = aRaster == null && !planes ?
+                Img.rowBuffer(0, rowLength) : null;
+        int[] bRow = bRaster == null && !planes ?
+                Img.rowBuffer(1, rowLength) : null;
+        long cumulativeDiff = 0;
+        long compared = 0;
+        for (int band = firstBand; band < endBand; band++){
+            int y = rows[band];
+            if (y < yStart || y >= yEnd){
+                continue;
+            }
+            // pixel x of the row is at index base + x of its source
+            int aBase = (y + yOffset) * width + xOffset;
+            int bBase = y * width;
+            int x = firstX(band, xStart);
+            if (planes){
+                for (; x < xEnd; x += step){
+                    // scaled by 3 to share the range of RGB diffs
+                    cumulativeDiff += 3 * ColorUtil.absDiffLuma(
+                            aLuma[aBase + x], bLuma[bBase + x]
+                    );
+                }
+            } else {
+                int[] aSource = aRaster;
+                if (aRaster == null){
+                    imgA.copyRow(
+                            xStart + xOffset, y + yOffset, rowLength, aRow, 0
+                    );
+                    aSource = aRow;
+                    aBase = -xStart;
+                }
+                int[] bSource = bRaster;
+                if (bRaster == null){
+                    imgB.copyRow(xStart, y, rowLength, bRow, 0);
+                    bSource = bRow;
+                    bBase = -xStart;
+                }
+                for (; x < xEnd; x += step){
+                    int a = aSource[aBase + x];
+                    int b = bSource[bBase + x];
+                    cumulativeDiff += luma ?
+                            3 * abs(ColorUtil.luma(a) - ColorUtil.luma(b)) :
+                            ColorUtil.absDiffRGB(a, b);
+                }
+            }
+            if (tally != null){
+                compared += count(firstX(band, xStart), xEnd);
+            }
+            if (Img.normalizedDiff(cumulativeDiff, nSampled) > exclusionVal){
+                if (tally != null){
+                    tally.pruned(
+                            compared, band - firstBand + 1, endBand - firstBand
+                    );
+                }
+                return 1f;
+            }
+        }
+        if (tally != null){
+            tally.scanned(nSampled);
+        }
+        return Img.normalizedDiff(cumulativeDiff, nSampled);
+    }
+
+    /**
+     * Returns first sampled x of a band at or after xStart.
+     */
+    private int firstX(int band, int xStart){
+        return xStart + Math.floorMod(phases[band] - xStart, step);
+    }
+
+    /**
+     * Returns number of samples from x to xEnd, exclusive.
+     */
+    private int count(int x, int xEnd){
+        return x >= xEnd ? 0 : (xEnd - 1 - x) / step + 1;
+    }
+
+    /**
+     * Hashes a band index into 32 well mixed bits.
+     */
+    private static int mix(int band){
+        int hash = band * 0x9E3779B1;
+        hash ^= hash >>> 15;
+        hash *= 0x2C1B3C6D;
+        hash ^= hash >>> 12;
+        hash *= 0x297A2D39;
+        hash ^= hash >>> 15;
+        return hash;
+    }
+}
@@ -0,0 +1,199 @@
+package img;
+
+import ar.com.hjg.pngj.IImageLine;
+import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.ImageLineInt;
+import ar.com.hjg.pngj.PngReader;
+import ar.com.hjg.pngj.PngjException;
+import ar.com.hjg.pngj.chunks.PngChunkPLTE;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Decodes PNG images with PNGJ, streaming each row straight into a
+ * packed RGB raster, without building a BufferedImage first.
+ * All PNG color types and bit depths are supported; samples deeper
+ * than 8 bits are reduced to their 8 most significant bits.
+ */
+final class PngDecoder {
+    private static final long SIGNATURE = 0x89504E470D0A1A0AL;
+
+    private PngDecoder(){}
+
+    /**
+     * Returns whether the file at passed path starts with the PNG
+     * signature.
+     * @param path: String
+     * @return boolean
+     * @throws IOException: On failure to read file path
+     */
+    static boolean isPng(String path) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new FileInputStream(path))){
+            return in.readLong() == SIGNATURE;
+        } catch (EOFException e) {
+            return false; // too short to be a PNG
+        }
+    }
+
+    /**
+     * Decodes PNG file at passed path
+     * @param path: String
+     * @return RasterImg
+     * @throws IOException: On failure to read or decode file path
+     */
+    static RasterImg decode(String path) throws IOException {
+        try (InputStream in = new BufferedInputStream(
+                new FileInputStream(path))){
+            return decode(in);
+        }
+    }
+
+    /**
+     * Decodes a PNG image from passed stream, which is left open.
+     * @param in: InputStream
+     * @return RasterImg
+     * @throws IOException: On failure to read or decode image
+     */
+    static RasterImg decode(InputStream in) throws IOException {
+        PngReader reader;
+        try {
+            reader = new PngReader(in, false);
+        } catch (PngjException e) {
+            throw new IOException("Failed to decode PNG header", e);
+        }
+        try {
+            return decodeRows(reader);
+        } catch (PngjException e) {
+            throw new IOException("Failed to decode PNG image", e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Decodes PNG file at passed path into a TiledImg, streaming each
+     * row into its scratch file, so that the image is never held on
+     * the heap whole.
+     * @param path: String
+     * @param directory: Path where the scratch file is created
+     * @param tileSize: int, a power of two
+     * @param cacheTiles: int
+     * @return TiledImg
+     * @throws IOException: On failure to read or decode file path
+     */
+    static TiledImg decodeTiled(
+            String path,
+            Path directory,
+            int tileSize,
+            int cacheTiles
+    ) throws IOException {
+        try (InputStream in = new BufferedInputStream(
+                new FileInputStream(path))){
+            PngReader reader;
+            try {
+                reader = new PngReader(in, false);
+            } catch (PngjException e) {
+                throw new IOException("Failed to decode PNG header", e);
+            }
+            try {
+                ImageInfo info = reader.imgInfo;
+                TiledImg img = new TiledImg(
+                        info.cols, info.rows, tileSize, cacheTiles, directory
+                );
+                int[] row = new int[info.cols];
+                for (int y = 0; y < info.rows; y++){
+                    convertRow(reader, y, row, 0);
+                    img.writeRow(y, row, 0);
+                }
+                reader.end();
+                return img;
+            } catch (PngjException e) {
+                throw new IOException("Failed to decode PNG image", e);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private static RasterImg decodeRows(PngReader reader){
+        ImageInfo info = reader.imgInfo;
+        int width = info.cols;
+        int height = info.rows;
+        int[] rgb = new int[width * height];
+        for (int y = 0; y < height; y++){
+            convertRow(reader, y, rgb, y * width);
+        }
+        reader.end();
+        return new RasterImg(width, height, rgb);
+    }
+
+    /**
+     * Reads row y of passed reader into dst as packed RGB values.
+     * @param reader: PngReader
+     * @param y: int
+     * @param dst: int[]
+     * @param index: int index in dst of first pixel of the row
+     */
+    private static void convertRow(
+            PngReader reader,
+            int y,
+            int[] dst,
+            int index
+    ){
+        ImageInfo info = reader.imgInfo;
+        int width = info.cols;
+        int channels = info.channels;
+        int bitDepth = info.bitDepth;
+        PngChunkPLTE palette = info.indexed ?
+                reader.getMetadata().getPLTE() : null;
+        int maxSample = (1 << bitDepth) - 1;
+        IImageLine line = reader.readRow(y);
+        int[] samples = ((ImageLineInt)line).getScanline();
+        for (int x = 0; x < width; x++){
+            int s = x * channels;
+            int value;
+            if (palette != null){
+                value = 0xFF000000 | palette.getEntry(samples[s]);
+            } else if (channels < 3){
+                // greyscale, optionally with alpha
+                int grey = to8Bit(samples[s], bitDepth, maxSample);
+                int alpha = channels == 2 ?
+                        to8Bit(samples[s + 1], bitDepth, maxSample) :
+                        0xFF;
+                value = alpha << 24 | grey << 16 | grey << 8 | grey;
+            } else {
+                int alpha = channels == 4 ?
+                        to8Bit(samples[s + 3], bitDepth, maxSample) :
+                        0xFF;
+                value = alpha << 24 |
+                        to8Bit(samples[s], bitDepth, maxSample) << 16 |
+                        to8Bit(samples[s + 1], bitDepth, maxSample) << 8 |
+                        to8Bit(samples[s + 2], bitDepth, maxSample);
+            }
+            dst[index + x] = value;
+        }
+    }
+
+    /**
+     * Scales a sample of passed bit depth to the range 0 to 255
+     * @param sample: int
+     * @param bitDepth: int
+     * @param maxSample: int largest value of a sample
+     * @return int
+     */
+    private static int to8Bit(int sample, int bitDepth, int maxSample){
+        if (bitDepth == 8){
+            return sample;
+        } else if (bitDepth > 8){
+            return sample >> (bitDepth - 8);
+        }
+        return sample * 255 / maxSample;
+    }
+}
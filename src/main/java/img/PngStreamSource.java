@@ -0,0 +1,82 @@
+package img;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+
+/**
+ * FrameSource splitting a stream of concatenated PNG images at the
+ * end of each image's IEND chunk. Only the bytes of each image are
+ * read here; decoding is left to the returned task.
+ */
+final class PngStreamSource implements FrameSource {
+    private static final long SIGNATURE = 0x89504E470D0A1A0AL;
+    private static final int IEND = 0x49454E44;
+    // longest chunk accepted; the PNG limit is 2^31 - 1, but each
+    // image is buffered in an array, which cannot hold one that long
+    private static final int MAX_CHUNK_LENGTH = 1 << 30;
+    // chunk data is copied in blocks of at most this many bytes, so a
+    // corrupt length fails at the end of the stream, not on allocation
+    private static final int BLOCK = 1 << 16;
+    private static final long MAX_IMAGE_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final DataInputStream in;
+
+    PngStreamSource(InputStream in){
+        this.in = new DataInputStream(in);
+    }
+
+    @Override
+    public Callable<Img> next() throws IOException {
+        byte[] head = new byte[8];
+        int read = 0;
+        while (read < head.length){
+            int n = in.read(head, read, head.length - read);
+            if (n < 0){
+                if (read == 0){
+                    return null; // stream ended between images
+                }
+                throw new EOFException(
+                        "Stream ended within a PNG signature"
+                );
+            }
+            read += n;
+        }
+        long signature = 0;
+        for (byte b : head){
+            signature = signature << 8 | (b & 0xff);
+        }
+        if (signature != SIGNATURE){
+            throw new IOException("Stream does not continue with a PNG image");
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(signature);
+        int type;
+        do {
+            // chunk: length, type, data, crc
+            int length = in.readInt();
+            type = in.readInt();
+            // 12 bytes of length, type and crc frame the data
+            if (length < 0 || length > MAX_CHUNK_LENGTH ||
+                    (long)bytes.size() + 12 + length > MAX_IMAGE_LENGTH){
+                throw new IOException("Invalid PNG chunk length: " + length);
+            }
+            out.writeInt(length);
+            out.writeInt(type);
+            byte[] block = new byte[Math.min(length + 4, BLOCK)];
+            for (int left = length + 4; left > 0; left -= block.length){
+                int n = Math.min(left, block.length);
+                in.readFully(block, 0, n);
+                out.write(block, 0, n);
+            }
+        } while (type != IEND);
+        byte[] image = bytes.toByteArray();
+        return () -> PngDecoder.decode(new ByteArrayInputStream(image));
+    }
+}
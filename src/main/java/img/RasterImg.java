@@ -0,0 +1,149 @@
+package img;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+
+/**
+ * Img backed by a flat array of packed RGB values.
+ * The source image is decoded once, and pixel (x, y) is then read
+ * from index y * width + x, without per-pixel calls into the
+ * decoded image or boxing.
+ */
+final class RasterImg extends Img {
+    private final int width;
+    private final int height;
+    private final int[] rgb;
+
+    RasterImg(int width, int height, int[] rgb){
+        if (rgb.length != width * height){
+            throw new IllegalArgumentException(String.format(
+                    "Raster length does not match image size. " +
+                            "Length: %s  Image size: %s, %s",
+                    rgb.length, width, height
+            ));
+        }
+        this.width = width;
+        this.height = height;
+        this.rgb = rgb;
+    }
+
+    /**
+     * Makes new RasterImg from passed String path
+     * @param path: String
+     * @return RasterImg
+     * @throws IOException: On failure to read or decode file path
+     */
+    static RasterImg RasterImgFromPath(String path) throws IOException {
+        BufferedImage src = ImageIO.read(new File(path));
+        if (src == null){
+            throw new IOException("No decoder available for image: " + path);
+        }
+        return RasterImgFromBufferedImage(src);
+    }
+
+    /**
+     * Makes new RasterImg holding the RGB values of passed image
+     * @param src: BufferedImage
+     * @return RasterImg
+     */
+    static RasterImg RasterImgFromBufferedImage(BufferedImage src){
+        int w = src.getWidth();
+        int h = src.getHeight();
+        return new RasterImg(w, h, src.getRGB(0, 0, w, h, null, 0, w));
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    int[] rgbRaster() {
+        return rgb;
+    }
+
+    public IPixelIterable offsetPixels(int xOffset, int yOffset) {
+        validateOffsets(xOffset, yOffset);
+        return new Pixels(xOffset, yOffset);
+    }
+
+    /**
+     * Class used as iterable to allow iteration over pixels of Img.
+     * Yields the same sequence as the BuffImg iterable.
+     */
+    private class Pixels implements IPixelIterable{
+        int xOffset;
+        int yOffset;
+
+        private Pixels(int xOffset, int yOffset){
+            this.xOffset = xOffset;
+            this.yOffset = yOffset;
+        }
+
+        /**
+         * Iterates over each pixel in raster
+         * @return Iterator
+         */
+        public IPixelIterator iterator() {
+            return new PixelIterator(xOffset, yOffset);
+        }
+
+        /**
+         * Iterator for Pixels Iterable. Returns each pixel in image
+         */
+        private class PixelIterator implements IPixelIterator{
+            int xOffset;
+            int yOffset;
+            int xIndex;
+            int yIndex;
+
+            private PixelIterator(int xOffset, int yOffset){
+                this.xOffset = xOffset;
+                this.yOffset = yOffset;
+                this.xIndex = 0;
+                this.yIndex = 0;
+            }
+
+            public boolean hasNext() {
+                return xIndex < width && yIndex < height;
+            }
+
+            /**
+             * yields RGB value of next pixel in img, or null if the
+             * offset position lies outside the raster.
+             * @return int
+             */
+            public Integer next() {
+                int pixelX = xOffset + xIndex;
+                int pixelY = yOffset + yIndex;
+                Integer value;
+                if (
+                        (pixelX < 0 || pixelX >= width) ||
+                        (pixelY < 0 || pixelY >= height)
+                    ){
+                    value = null;
+                } else {
+                    value = rgb[pixelY * width + pixelX];
+                }
+                if (xIndex < width){
+                    xIndex ++;
+                } else {
+                    yIndex ++;
+                    xIndex = 0;
+                }
+                return value;
+            }
+
+            @Override
+            public boolean hasNonNullLeft() {
+                return hasNext() &&
+                        xIndex + xOffset < width &&
+                        yIndex + yOffset < height;
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package img;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.Math.abs;
+
+/**
+ * Spiral search that scores every offset on a PixelSample, keeping
+ * the best few offsets, and then scores only those on every pixel.
+ * Offsets are handed out in chunks as by OffsetSearch. Each thread
+ * keeps its own best candidates, which are merged once all threads
+ * have finished; ties are broken by spiral index, as in
+ * OffsetSearch, so results do not depend on the number of threads.
+ */
+final class SampledSearch extends SharedWork {
+    // most offsets handed to a thread at once
+    private static final int MAX_CHUNK = 64;
+
+    private final SpiralCoordinates spiral;
+    private final long nOffsets;
+    private final int chunk;
+    private final AtomicLong cursor = new AtomicLong();
+    private final Img imgA;
+    private final Img imgB;
+    private final int xCenter, yCenter;
+    private final int xLimit, yLimit;
+    private final PixelSample sample;
+    private final int nCandidates;
+    private final Comparison comparison;
+    private final boolean interleaved;
+    private final SearchCall call;
+    // best candidates of each thread, packed as by OffsetSearch.pack
+    private final ConcurrentLinkedQueue<long[]> threadCandidates =
+            new ConcurrentLinkedQueue<>();
+    private float bestDiff = 1f;
+
+    /**
+     * Creates search around a center offset.
+     * Parameters are as for OffsetSearch.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param xCenter: int
+     * @param yCenter: int
+     * @param xGate: int distance from center to search along x
+     * @param yGate: int distance from center to search along y
+     * @param xLimit: int
+     * @param yLimit: int
+     * @param parallelism: int number of threads expected to help
+     * @param options: SearchOptions
+     * @param call: SearchCall the search is run for
+     */
+    SampledSearch(
+            Img imgA,
+            Img imgB,
+            int xCenter,
+            int yCenter,
+            int xGate,
+            int yGate,
+            int xLimit,
+            int yLimit,
+            int parallelism,
+            SearchOptions options,
+            SearchCall call
+    ){
+        this.imgA = imgA;
+        this.imgB = imgB;
+        this.xCenter = xCenter;
+        this.yCenter = yCenter;
+        this.xLimit = xLimit;
+        this.yLimit = yLimit;
+        this.call = call;
+        sample = new PixelSample(
+                imgB.getWidth(), imgB.getHeight(), options.getSampleStep()
+        );
+        nCandidates = options.getVerifiedCandidates();
+        comparison = options.getComparison();
+        interleaved = options.isInterleavedScan();
+        spiral = OffsetSearch.spiral(xGate, yGate);
+        nOffsets = spiral.size();
+        chunk = (int)Math.max(
+                1, Math.min(MAX_CHUNK, nOffsets / (parallelism * 32L))
+        );
+    }
+
+    @Override
+    void work(){
+        SearchRecorder.Tally tally = call.tally();
+        long[] best = new long[nCandidates];   // ascending
+        Arrays.fill(best, Long.MAX_VALUE);
+        threadCandidates.add(best);
+        int[] xy = new int[2];
+        while (true){
+            long start = cursor.getAndAdd(chunk);
+            if (start >= nOffsets){
+                return;
+            }
+            long end = Math.min(nOffsets, start + chunk);
+            for (long i = start; i < end; i++){
+                if (call.stopRequested()){
+                    call.markTruncated();
+                    return;
+                }
+                spiral.locate(i, xy);
+                int x = xCenter + xy[0];
+                int y = yCenter + xy[1];
+                if (abs(x) > xLimit || abs(y) > yLimit){
+                    continue;
+                }
+                // offsets worse than the worst kept cannot be kept
+                float worst = diffOf(best[nCandidates - 1]);
+                float diff = sample.diff(
+                        imgA, imgB, x, y, worst, comparison, tally
+                );
+                if (diff < 1f){
+                    insert(best, OffsetSearch.pack(diff, i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Scores the best candidates of all threads on every pixel, and
+     * returns the best of them. Only valid once every thread working
+     * on the search has finished; runs on the calling thread.
+     * If the call is stopped first, candidates not yet verified are
+     * skipped.
+     * @return float[2] (x, y) or null if no offset could be compared
+     */
+    float[] verify(){
+        List<Long> merged = new ArrayList<>();
+        for (long[] candidates : threadCandidates){
+            for (long candidate : candidates){
+                if (candidate != Long.MAX_VALUE){
+                    merged.add(candidate);
+                }
+            }
+        }
+        merged.sort(null);
+        SearchRecorder.Tally tally = call.tally();
+        long best = OffsetSearch.pack(1f, OffsetSearch.INDEX_MASK);
+        int[] xy = new int[2];
+        for (int i = 0; i < Math.min(nCandidates, merged.size()); i++){
+            if (call.stopRequested()){
+                call.markTruncated();
+                // out of time before any candidate was verified; the
+                // best on the sample is the best estimate left
+                if (i == 0){
+                    best = merged.get(0);
+                }
+                break;
+            }
+            long index = merged.get(i) & OffsetSearch.INDEX_MASK;
+            float leastDiff = diffOf(best);
+            spiral.locate(index, xy);
+            float diff = imgA.diffInRegion(
+                    imgB, 0, 0, imgB.getWidth(), imgB.getHeight(),
+                    xCenter + xy[0], yCenter + xy[1],
+                    leastDiff, comparison, interleaved, tally
+            );
+            if (diff < 1f && diff <= leastDiff){
+                best = Math.min(best, OffsetSearch.pack(diff, index));
+            }
+        }
+        long index = best & OffsetSearch.INDEX_MASK;
+        if (index == OffsetSearch.INDEX_MASK){
+            return null;
+        }
+        bestDiff = diffOf(best);
+        spiral.locate(index, xy);
+        return new float[] {
+                (float)(xCenter + xy[0]), (float)(yCenter + xy[1])
+        };
+    }
+
+    /**
+     * Returns exact diff at the offset returned by verify().
+     * @return float
+     */
+    float bestDiff(){
+        return bestDiff;
+    }
+
+    /**
+     * Returns diff of a packed candidate, or 1 for an empty slot.
+     */
+    private static float diffOf(long packed){
+        return packed == Long.MAX_VALUE ? 1f : OffsetSearch.diffOf(packed);
+    }
+
+    /**
+     * Inserts packed candidate into ascending array of the best
+     * candidates, dropping the worst, if it beats the worst.
+     */
+    private static void insert(long[] best, long candidate){
+        int i = best.length - 1;
+        if (candidate >= best[i]){
+            return;
+        }
+        while (i > 0 && best[i - 1] > candidate){
+            best[i] = best[i - 1];
+            i--;
+        }
+        best[i] = candidate;
+    }
+}
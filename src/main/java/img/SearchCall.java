@@ -0,0 +1,97 @@
+package img;
+
+/**
+ * State shared by every search run for one Tracker.appMotion call:
+ * the recorder of its metrics, if any, and whether it has been
+ * told to stop, by cancellation or by reaching its deadline.
+ * Searches check stopRequested() before each offset, and stop
+ * taking work once it returns true, keeping the best offset found
+ * so far.
+ */
+final class SearchCall {
+    // deadline of calls that have none
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final SearchRecorder recorder;
+    private final long deadline;     // System.nanoTime() to stop at
+    private volatile boolean stopped;
+    private volatile boolean truncated;
+    private volatile float confidence = Float.NaN;
+
+    /**
+     * Creates state of a call without a deadline.
+     * @param recorder: SearchRecorder or null
+     */
+    SearchCall(SearchRecorder recorder){
+        this(recorder, NO_DEADLINE);
+    }
+
+    /**
+     * Creates state of a call that stops at passed deadline.
+     * @param recorder: SearchRecorder or null
+     * @param deadline: long, as System.nanoTime()
+     */
+    SearchCall(SearchRecorder recorder, long deadline){
+        this.recorder = recorder;
+        this.deadline = deadline;
+    }
+
+    SearchRecorder recorder(){
+        return recorder;
+    }
+
+    /**
+     * Returns tally of the calling thread, or null if the call
+     * records no metrics.
+     * @return SearchRecorder.Tally or null
+     */
+    SearchRecorder.Tally tally(){
+        return recorder == null ? null : recorder.tally();
+    }
+
+    /**
+     * Tells searches of this call to stop.
+     */
+    void stop(){
+        stopped = true;
+    }
+
+    /**
+     * Returns whether searches should stop taking work.
+     * @return boolean
+     */
+    boolean stopRequested(){
+        if (stopped){
+            return true;
+        }
+        if (deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0){
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    /**
+     * Records that a search stopped with work left, so that its
+     * result may not be the best offset of its window.
+     */
+    void markTruncated(){
+        truncated = true;
+    }
+
+    boolean isTruncated(){
+        return truncated;
+    }
+
+    /**
+     * Returns confidence of the motion found, or NaN if it was not
+     * rated; see SubPixelFit.
+     * @return float
+     */
+    float confidence(){
+        return confidence;
+    }
+
+    void setConfidence(float confidence){
+        this.confidence = confidence;
+    }
+}
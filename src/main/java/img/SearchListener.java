@@ -0,0 +1,27 @@
+package img;
+
+/**
+ * Receives metrics of searches run with options it was set on, via
+ * SearchOptions.setListener. Searches without a listener collect
+ * no metrics.
+ * Listeners may be called from any thread, and by several threads
+ * at once if the same options are used by concurrent searches.
+ */
+public interface SearchListener {
+    /**
+     * Called once per Tracker.appMotion call, after the search has
+     * finished and before its result is returned.
+     * @param metrics: SearchMetrics
+     */
+    void searchCompleted(SearchMetrics metrics);
+
+    /**
+     * Called after each frame is decoded by callers that decode
+     * frames for a search, such as JPngTrack and FrameSequence.
+     * Frames may be decoded in the background, while searches of
+     * earlier frames are still running.
+     * @param nanos: long time taken to decode the frame
+     */
+    default void frameDecoded(long nanos){
+    }
+}
@@ -0,0 +1,140 @@
+package img;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counts describing the work done by one Tracker.appMotion call,
+ * as passed to a SearchListener.
+ * An offset is evaluated when its pixels are scanned; it is pruned
+ * when the scan is cut short because it can no longer beat the
+ * best offset found so far. Offsets excluded by channel sums are
+ * skipped without any pixel being scanned.
+ * Phase correlation searches scan no offsets, so only their time
+ * and best score are reported.
+ */
+public final class SearchMetrics {
+    /** number of buckets of the prune depth histogram */
+    public static final int DEPTH_BUCKETS = 10;
+
+    private final long offsetsEvaluated;
+    private final long offsetsPruned;
+    private final long offsetsExcludedBySums;
+    private final long pixelComparisons;
+    private final long[] pruneDepths;
+    private final Map<String, Long> offsetsPerThread;
+    private final long searchNanos;
+    private final float bestScore;
+
+    SearchMetrics(
+            long offsetsEvaluated,
+            long offsetsPruned,
+            long offsetsExcludedBySums,
+            long pixelComparisons,
+            long[] pruneDepths,
+            Map<String, Long> offsetsPerThread,
+            long searchNanos,
+            float bestScore
+    ){
+        this.offsetsEvaluated = offsetsEvaluated;
+        this.offsetsPruned = offsetsPruned;
+        this.offsetsExcludedBySums = offsetsExcludedBySums;
+        this.pixelComparisons = pixelComparisons;
+        this.pruneDepths = pruneDepths;
+        this.offsetsPerThread = Collections.unmodifiableMap(offsetsPerThread);
+        this.searchNanos = searchNanos;
+        this.bestScore = bestScore;
+    }
+
+    /**
+     * Returns number of offsets whose pixels were scanned, including
+     * those pruned part way through.
+     * @return long
+     */
+    public long getOffsetsEvaluated(){
+        return offsetsEvaluated;
+    }
+
+    public long getOffsetsPruned(){
+        return offsetsPruned;
+    }
+
+    public long getOffsetsExcludedBySums(){
+        return offsetsExcludedBySums;
+    }
+
+    /**
+     * Returns number of pixel pairs compared over all offsets.
+     * @return long
+     */
+    public long getPixelComparisons(){
+        return pixelComparisons;
+    }
+
+    /**
+     * Returns histogram of how far into their scan pruned offsets
+     * were cut. Bucket i counts offsets cut after scanning more
+     * than i / DEPTH_BUCKETS, and at most (i + 1) / DEPTH_BUCKETS,
+     * of the rows they overlap.
+     * @return long[DEPTH_BUCKETS] copy
+     */
+    public long[] getPruneDepthHistogram(){
+        return pruneDepths.clone();
+    }
+
+    /**
+     * Returns number of offsets evaluated by each thread that took
+     * part in the search, by thread name.
+     * @return unmodifiable Map of thread name to count
+     */
+    public Map<String, Long> getOffsetsPerThread(){
+        return offsetsPerThread;
+    }
+
+    /**
+     * Returns wall time of the search, excluding any decoding.
+     * @return long nanoseconds
+     */
+    public long getSearchNanos(){
+        return searchNanos;
+    }
+
+    /**
+     * Returns diff at the offset found, from 0 to 1, or NaN if no
+     * offset could be compared.
+     * @return float
+     */
+    public float getBestScore(){
+        return bestScore;
+    }
+
+    /**
+     * Returns metrics as named counters, for export to monitoring
+     * systems. Prune depth buckets are named "prune.depth.<i>".
+     * @return unmodifiable Map of counter name to value
+     */
+    public Map<String, Long> toCounters(){
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("offsets.evaluated", offsetsEvaluated);
+        counters.put("offsets.pruned", offsetsPruned);
+        counters.put("offsets.excludedBySums", offsetsExcludedBySums);
+        counters.put("pixels.compared", pixelComparisons);
+        counters.put("search.nanos", searchNanos);
+        for (int i = 0; i < pruneDepths.length; i++){
+            counters.put("prune.depth." + i, pruneDepths[i]);
+        }
+        return Collections.unmodifiableMap(counters);
+    }
+
+    @Override
+    public String toString(){
+        return String.format(
+                "SearchMetrics(evaluated=%s, pruned=%s, excludedBySums=%s, " +
+                "pixels=%s, searchNanos=%s, bestScore=%s, threads=%s)",
+                offsetsEvaluated, offsetsPruned, offsetsExcludedBySums,
+                pixelComparisons, searchNanos, bestScore,
+                offsetsPerThread.size()
+        );
+    }
+}
@@ -0,0 +1,33 @@
+package img;
+
+/**
+ * Strategies available to Img.appMotion for finding the offset
+ * between two images.
+ */
+public enum SearchMode {
+    /** spiral search over every offset inside the gates */
+    SPIRAL,
+    /**
+     * spiral search on downsampled copies of both images, refined
+     * in a small neighbourhood at each finer level
+     */
+    PYRAMID,
+    /**
+     * peak of the phase correlation of both images, computed with
+     * fourier transforms; cost does not grow with the gates
+     */
+    PHASE_CORRELATION,
+    /**
+     * every offset inside the gates scored into a CostSurface, each
+     * row of images compared at every x offset while in cache;
+     * nothing is pruned, so all scores are exact, and cost grows with
+     * the area of the gates times that of the images
+     */
+    EXHAUSTIVE,
+    /**
+     * translation agreed on by most matches between corner keypoints
+     * of both images, then checked by scoring the offsets around it;
+     * cost does not grow with the gates
+     */
+    FEATURES
+}
@@ -0,0 +1,444 @@
+package img;
+
+/**
+ * Options controlling how Img.appMotion searches for the offset
+ * between two images.
+ * Setters return this object, so that options may be chained:
+ * SearchOptions.pyramid().setPyramidLevels(4)
+ */
+public final class SearchOptions {
+    private SearchMode mode = SearchMode.SPIRAL;
+    private int pyramidLevels = 3;
+    private int refinementRadius = 2;
+    private boolean windowed = true;
+    private boolean restrictedToGate = true;
+    private boolean subPixel = false;
+    private int eliminationBlocks = 4;
+    private Comparison comparison = Comparison.RGB;
+    private boolean interleavedScan = false;
+    private float samplingRate = 1f;
+    private int verifiedCandidates = 8;
+    private float[] prediction = null;
+    private int[] predictionRadius = null;
+    private int maxKeypoints = 256;
+    private BlockPattern blockPattern = BlockPattern.DIAMOND;
+    private SearchListener listener = null;
+
+    /**
+     * Returns options for a full resolution spiral search.
+     * @return SearchOptions
+     */
+    public static SearchOptions spiral(){
+        return new SearchOptions();
+    }
+
+    /**
+     * Returns options for a coarse-to-fine pyramid search with
+     * default number of levels and refinement radius.
+     * @return SearchOptions
+     */
+    public static SearchOptions pyramid(){
+        return new SearchOptions().setMode(SearchMode.PYRAMID);
+    }
+
+    /**
+     * Returns options for a phase correlation search, windowed and
+     * restricted to the gates.
+     * @return SearchOptions
+     */
+    public static SearchOptions phaseCorrelation(){
+        return new SearchOptions().setMode(SearchMode.PHASE_CORRELATION);
+    }
+
+    /**
+     * Returns options for an exhaustive search filling the cost
+     * surface of the gates.
+     * @return SearchOptions
+     */
+    public static SearchOptions exhaustive(){
+        return new SearchOptions().setMode(SearchMode.EXHAUSTIVE);
+    }
+
+    /**
+     * Returns options for a feature search, for motion too large to
+     * search offset by offset.
+     * @return SearchOptions
+     */
+    public static SearchOptions features(){
+        return new SearchOptions().setMode(SearchMode.FEATURES);
+    }
+
+    /**
+     * Returns independent copy of these options.
+     * @return SearchOptions
+     */
+    public SearchOptions copy(){
+        SearchOptions copy = new SearchOptions();
+        copy.mode = mode;
+        copy.pyramidLevels = pyramidLevels;
+        copy.refinementRadius = refinementRadius;
+        copy.windowed = windowed;
+        copy.restrictedToGate = restrictedToGate;
+        copy.subPixel = subPixel;
+        copy.eliminationBlocks = eliminationBlocks;
+        copy.comparison = comparison;
+        copy.interleavedScan = interleavedScan;
+        copy.samplingRate = samplingRate;
+        copy.verifiedCandidates = verifiedCandidates;
+        copy.prediction = prediction;
+        copy.predictionRadius = predictionRadius;
+        copy.maxKeypoints = maxKeypoints;
+        copy.blockPattern = blockPattern;
+        copy.listener = listener;
+        return copy;
+    }
+
+    public SearchMode getMode(){
+        return mode;
+    }
+
+    public SearchOptions setMode(SearchMode mode){
+        if (mode == null){
+            throw new IllegalArgumentException("mode may not be null");
+        }
+        this.mode = mode;
+        return this;
+    }
+
+    public int getPyramidLevels(){
+        return pyramidLevels;
+    }
+
+    /**
+     * Sets number of pyramid levels, including the full resolution
+     * level. Each level has half the width and height of the one
+     * below it. Levels that would be too small to search
+     * meaningfully are not built.
+     * @param pyramidLevels: int, at least 1
+     * @return this
+     */
+    public SearchOptions setPyramidLevels(int pyramidLevels){
+        if (pyramidLevels < 1){
+            throw new IllegalArgumentException(
+                    "pyramidLevels must be at least 1: " + pyramidLevels
+            );
+        }
+        this.pyramidLevels = pyramidLevels;
+        return this;
+    }
+
+    public int getRefinementRadius(){
+        return refinementRadius;
+    }
+
+    /**
+     * Sets radius, in pixels of each finer level, of the
+     * neighbourhood searched around the offset found at the level
+     * above it. Feature searches score the offsets within this
+     * radius of the translation their keypoints agree on.
+     * @param refinementRadius: int, at least 1
+     * @return this
+     */
+    public SearchOptions setRefinementRadius(int refinementRadius){
+        if (refinementRadius < 1){
+            throw new IllegalArgumentException(
+                    "refinementRadius must be at least 1: " +
+                            refinementRadius
+            );
+        }
+        this.refinementRadius = refinementRadius;
+        return this;
+    }
+
+    public boolean isWindowed(){
+        return windowed;
+    }
+
+    /**
+     * Sets whether images are tapered with a Hann window before
+     * phase correlation, which suppresses false peaks caused by
+     * image borders.
+     * @param windowed: boolean
+     * @return this
+     */
+    public SearchOptions setWindowed(boolean windowed){
+        this.windowed = windowed;
+        return this;
+    }
+
+    public boolean isRestrictedToGate(){
+        return restrictedToGate;
+    }
+
+    /**
+     * Sets whether motion returned is kept within the x and y gates.
+     * The phase correlation peak is then only looked for within
+     * them, rather than over every shift, and in every mode, offsets
+     * refined to a fraction of a pixel are clamped to them rather
+     * than left up to half a pixel past. On by default.
+     * @param restrictedToGate: boolean
+     * @return this
+     */
+    public SearchOptions setRestrictedToGate(boolean restrictedToGate){
+        this.restrictedToGate = restrictedToGate;
+        return this;
+    }
+
+    public boolean isSubPixel(){
+        return subPixel;
+    }
+
+    /**
+     * Sets whether the returned offset is interpolated between
+     * whole pixels. Phase correlation fits a parabola to its peak;
+     * every other mode, exhaustive and feature searches included,
+     * fits the scores of the four neighbours of the best whole-pixel
+     * offset, and also rates the confidence of the match; see
+     * MotionResult.getConfidence. Exhaustive searches read those
+     * scores from their cost surface.
+     * @param subPixel: boolean
+     * @return this
+     */
+    public SearchOptions setSubPixel(boolean subPixel){
+        this.subPixel = subPixel;
+        return this;
+    }
+
+    public int getEliminationBlocks(){
+        return eliminationBlocks;
+    }
+
+    /**
+     * Sets number of blocks per side into which the overlap of each
+     * candidate offset is split, when bounding its diff from channel
+     * sums before any pixels are compared. Offsets whose bound
+     * cannot beat the best found so far are skipped; results are
+     * unchanged. More blocks give tighter bounds at higher cost per
+     * offset. Zero disables the check.
+     * @param eliminationBlocks: int, at least 0
+     * @return this
+     */
+    public SearchOptions setEliminationBlocks(int eliminationBlocks){
+        if (eliminationBlocks < 0){
+            throw new IllegalArgumentException(
+                    "eliminationBlocks may not be negative: " +
+                            eliminationBlocks
+            );
+        }
+        this.eliminationBlocks = eliminationBlocks;
+        return this;
+    }
+
+    public Comparison getComparison(){
+        return comparison;
+    }
+
+    /**
+     * Sets pixel values compared by spiral, pyramid, exhaustive and
+     * block searches; see Comparison for the accuracy of each.
+     * @param comparison: Comparison
+     * @return this
+     */
+    public SearchOptions setComparison(Comparison comparison){
+        if (comparison == null){
+            throw new IllegalArgumentException("comparison may not be null");
+        }
+        this.comparison = comparison;
+        return this;
+    }
+
+    public boolean isInterleavedScan(){
+        return interleavedScan;
+    }
+
+    /**
+     * Sets whether spiral and pyramid searches scan the rows of each
+     * candidate offset in interleaved, coarse to fine order rather
+     * than top to bottom. Interleaved scans exclude offsets that
+     * only differ in part of the image, such as below a uniform sky,
+     * after fewer rows. Scores and results are unchanged.
+     * @param interleavedScan: boolean
+     * @return this
+     */
+    public SearchOptions setInterleavedScan(boolean interleavedScan){
+        this.interleavedScan = interleavedScan;
+        return this;
+    }
+
+    public float getSamplingRate(){
+        return samplingRate;
+    }
+
+    /**
+     * Sets fraction of pixels compared when scoring each candidate
+     * offset of a spiral or pyramid search. Below 1, every offset is
+     * first scored on a fixed, evenly spread sample of about this
+     * fraction of the pixels of image B: one pixel from each square
+     * cell of a grid, at a position within the cell that depends
+     * only on the cell. The getVerifiedCandidates() offsets scoring
+     * best on the sample are then scored on every pixel, and the
+     * best of those is returned.
+     * The sample grid has whole cells, so the rate is rounded to
+     * 1 / (step * step) for a whole number step. At 1, the default,
+     * every offset is scored exactly.
+     * @param samplingRate: float greater than 0, at most 1
+     * @return this
+     */
+    public SearchOptions setSamplingRate(float samplingRate){
+        if (!(samplingRate > 0f && samplingRate <= 1f)){
+            throw new IllegalArgumentException(
+                    "samplingRate must be greater than 0, and at most 1: " +
+                            samplingRate
+            );
+        }
+        this.samplingRate = samplingRate;
+        return this;
+    }
+
+    /**
+     * Returns side of the cells of the sample grid for the sampling
+     * rate of these options; 1 if every pixel is compared.
+     * @return int
+     */
+    int getSampleStep(){
+        return Math.max(1, Math.round((float)(1 / Math.sqrt(samplingRate))));
+    }
+
+    public int getVerifiedCandidates(){
+        return verifiedCandidates;
+    }
+
+    /**
+     * Sets number of offsets, best on the pixel sample, that are
+     * scored exactly when the sampling rate is below 1. More
+     * candidates make it less likely that the sample misranks the
+     * true offset out of them.
+     * @param verifiedCandidates: int, at least 1
+     * @return this
+     */
+    public SearchOptions setVerifiedCandidates(int verifiedCandidates){
+        if (verifiedCandidates < 1){
+            throw new IllegalArgumentException(
+                    "verifiedCandidates must be at least 1: " +
+                            verifiedCandidates
+            );
+        }
+        this.verifiedCandidates = verifiedCandidates;
+        return this;
+    }
+
+    /**
+     * Returns predicted offset set on these options.
+     * @return float[2] (x, y) or null if there is no prediction
+     */
+    public float[] getPrediction(){
+        return prediction == null ? null : prediction.clone();
+    }
+
+    /**
+     * Sets offset that the search is expected to find, such as the
+     * motion between the previous pair of frames. Spiral and pyramid
+     * searches start from the prediction rather than (0, 0), so a
+     * good prediction makes the early exit bound tight sooner.
+     * Without a prediction radius the whole gate is still searched,
+     * so results are unchanged, except for which of several equally
+     * good offsets is returned. Phase correlation ignores it.
+     * @param prediction: float[2] (x, y), or null to clear
+     * @return this
+     */
+    public SearchOptions setPrediction(float[] prediction){
+        if (prediction != null && prediction.length != 2){
+            throw new IllegalArgumentException(
+                    "prediction must hold an x and a y offset"
+            );
+        }
+        this.prediction = prediction == null ? null : prediction.clone();
+        return this;
+    }
+
+    /**
+     * Returns radius around the prediction that spiral searches
+     * are limited to.
+     * @return int[2] (x, y) or null if the whole gate is searched
+     */
+    public int[] getPredictionRadius(){
+        return predictionRadius == null ? null : predictionRadius.clone();
+    }
+
+    /**
+     * Limits spiral searches to passed distance from the prediction
+     * on each axis, which should reflect how far predictions have
+     * recently been off. If the best offset lies on the edge of this
+     * window, the motion may have outrun it, and the whole gate is
+     * searched after all.
+     * @param predictionRadius: int[2] (x, y) of at least 0 each,
+     *      or null to search the whole gate
+     * @return this
+     */
+    public SearchOptions setPredictionRadius(int[] predictionRadius){
+        if (predictionRadius != null && (predictionRadius.length != 2 ||
+                predictionRadius[0] < 0 || predictionRadius[1] < 0)){
+            throw new IllegalArgumentException(
+                    "predictionRadius must hold two radii of at least 0"
+            );
+        }
+        this.predictionRadius = predictionRadius == null ?
+                null : predictionRadius.clone();
+        return this;
+    }
+
+    public int getMaxKeypoints(){
+        return maxKeypoints;
+    }
+
+    /**
+     * Sets largest number of corner keypoints a feature search
+     * detects in each image. Matching costs grow with the square of
+     * this number; more keypoints find motion in images with less
+     * texture, or where more of the scene moves on its own.
+     * @param maxKeypoints: int, at least 1
+     * @return this
+     */
+    public SearchOptions setMaxKeypoints(int maxKeypoints){
+        if (maxKeypoints < 1){
+            throw new IllegalArgumentException(
+                    "maxKeypoints must be at least 1: " + maxKeypoints
+            );
+        }
+        this.maxKeypoints = maxKeypoints;
+        return this;
+    }
+
+    public BlockPattern getBlockPattern(){
+        return blockPattern;
+    }
+
+    /**
+     * Sets pattern used by motion field searches to step towards
+     * the best match of each block.
+     * @param blockPattern: BlockPattern
+     * @return this
+     */
+    public SearchOptions setBlockPattern(BlockPattern blockPattern){
+        if (blockPattern == null){
+            throw new IllegalArgumentException("blockPattern may not be null");
+        }
+        this.blockPattern = blockPattern;
+        return this;
+    }
+
+    public SearchListener getListener(){
+        return listener;
+    }
+
+    /**
+     * Sets listener receiving metrics of each search run with these
+     * options. Metrics are only collected while a listener is set.
+     * @param listener: SearchListener or null for none
+     * @return this
+     */
+    public SearchOptions setListener(SearchListener listener){
+        this.listener = listener;
+        return this;
+    }
+}
@@ -0,0 +1,124 @@
+package img;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects metrics of one Tracker.appMotion call for its
+ * SearchListener. Each thread counts into its own Tally, so
+ * recording adds no contention to the search; tallies are only
+ * combined once the search has finished.
+ * Searches without a listener have no recorder, and their hot
+ * loops only test it for null.
+ */
+final class SearchRecorder {
+    private final SearchListener listener;
+    private final long start = System.nanoTime();
+    private final ConcurrentHashMap<Thread, Tally> tallies =
+            new ConcurrentHashMap<>();
+    private float bestScore = Float.NaN;
+
+    SearchRecorder(SearchListener listener){
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the Tally of the calling thread. Called by each thread
+     * as it joins a search, not per offset.
+     * @return Tally
+     */
+    Tally tally(){
+        return tallies.computeIfAbsent(
+                Thread.currentThread(), thread -> new Tally()
+        );
+    }
+
+    /**
+     * Records the diff of the offset found by the latest search.
+     * @param diff: float
+     */
+    void setBestScore(float diff){
+        bestScore = diff;
+    }
+
+    /**
+     * Combines the tallies of every thread and passes the result to
+     * the listener. Only valid once every thread has finished.
+     * If no score was recorded, scores the result directly.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param result: float[2] (x, y) or null
+     */
+    void finish(Img imgA, Img imgB, float[] result){
+        long searchNanos = System.nanoTime() - start;
+        if (Float.isNaN(bestScore) && result != null){
+            bestScore = imgA.diffAtOffset(
+                    imgB, Math.round(result[0]), Math.round(result[1]), 1f
+            );
+        }
+        long evaluated = 0;
+        long pruned = 0;
+        long excluded = 0;
+        long pixels = 0;
+        long[] depths = new long[SearchMetrics.DEPTH_BUCKETS];
+        Map<String, Long> perThread = new HashMap<>();
+        for (Map.Entry<Thread, Tally> entry : tallies.entrySet()){
+            Tally tally = entry.getValue();
+            evaluated += tally.evaluated;
+            pruned += tally.pruned;
+            excluded += tally.excludedBySums;
+            pixels += tally.pixelComparisons;
+            for (int i = 0; i < depths.length; i++){
+                depths[i] += tally.depths[i];
+            }
+            perThread.merge(
+                    entry.getKey().getName(), tally.evaluated, Long::sum
+            );
+        }
+        listener.searchCompleted(new SearchMetrics(
+                evaluated, pruned, excluded, pixels, depths, perThread,
+                searchNanos, bestScore
+        ));
+    }
+
+    /**
+     * Counts of a single thread. Only its own thread writes to it.
+     */
+    static final class Tally {
+        long evaluated;
+        long pruned;
+        long excludedBySums;
+        long pixelComparisons;
+        final long[] depths = new long[SearchMetrics.DEPTH_BUCKETS];
+
+        /**
+         * Records an offset scanned to the end.
+         * @param pixels: long pixels compared
+         */
+        void scanned(long pixels){
+            evaluated++;
+            pixelComparisons += pixels;
+        }
+
+        /**
+         * Records an offset whose scan was cut short.
+         * @param pixels: long pixels compared before the cut
+         * @param rows: int rows scanned before the cut
+         * @param totalRows: int rows of the overlap
+         */
+        void pruned(long pixels, int rows, int totalRows){
+            evaluated++;
+            pruned++;
+            pixelComparisons += pixels;
+            int bucket = (int)(
+                    ((long)rows * SearchMetrics.DEPTH_BUCKETS - 1) / totalRows
+            );
+            depths[bucket]++;
+        }
+
+        void excluded(){
+            excludedBySums++;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package img;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit of work that any number of threads may share, such as one
+ * search. Each has its own completion signal, so concurrent units
+ * do not wake each other.
+ * The thread that starts the work takes part in it, and helpers
+ * that only start once it is complete return at once, so work
+ * started from a worker of the same executor cannot deadlock.
+ */
+abstract class SharedWork {
+    // threads currently working on this unit. Starts at one for
+    // the thread that created it; once it reaches zero, no further
+    // threads may join.
+    private final AtomicInteger nLiveThreads = new AtomicInteger(1);
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    /**
+     * Takes items of work until none are left. Called concurrently
+     * by every thread sharing the work.
+     */
+    abstract void work();
+
+    /**
+     * Shares the work between the calling thread and up to
+     * parallelism - 1 helpers on passed executor, and waits for
+     * every thread that joined to finish.
+     * @param executor: Executor
+     * @param parallelism: int
+     */
+    final void runWith(Executor executor, int parallelism){
+        try {
+            for (int i = 1; i < parallelism; i++){
+                executor.execute(this::help);
+            }
+        } catch (RejectedExecutionException e) {
+            // executor is saturated or closing; remaining helpers are
+            // not needed for the work to complete.
+        }
+        run();
+        awaitFinished();
+    }
+
+    /**
+     * Works until no work is left, if the unit is still open to new
+     * threads. Used by helper threads, which may start after the
+     * unit has already been completed by others.
+     */
+    final void help(){
+        int n;
+        do {
+            n = nLiveThreads.get();
+            if (n == 0){
+                return; // work is already complete
+            }
+        } while (!nLiveThreads.compareAndSet(n, n + 1));
+        run();
+    }
+
+    /**
+     * Works until no work is left. Must be called once by the
+     * thread that created the unit, which then waits on
+     * awaitFinished() for helpers that joined.
+     */
+    final void run(){
+        try {
+            work();
+        } finally {
+            if (nLiveThreads.decrementAndGet() == 0){
+                finished.countDown();
+            }
+        }
+    }
+
+    /**
+     * Waits for every thread working on this unit to finish.
+     * Interrupts are deferred until then.
+     */
+    final void awaitFinished(){
+        boolean interrupted = false;
+        while (true){
+            try {
+                finished.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
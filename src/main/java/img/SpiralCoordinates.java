@@ -0,0 +1,183 @@
+package img;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Yields offsets of a width x height area, in a spiral starting at
+ * (0, 0), so that small offsets are visited first.
+ * Positions are computed from their index in the spiral, so that
+ * nothing proportional to the area is held, and searches can hand
+ * out indices to threads without materialising the spiral.
+ * Ring r of the spiral holds the offsets with max(abs(x), abs(y))
+ * equal to r. It starts at (r, 1 - r), and runs up x = r, back
+ * along y = r, down x = -r and along y = -r, keeping only the
+ * positions inside the area.
+ */
+final class SpiralCoordinates implements Iterable<int[]>{
+    private final int xRadius, yRadius;
+    private final int inner;        // radius of the largest full ring
+    private final long innerCount;  // offsets of the full rings
+    private final long size;
+
+    /**
+     * Constructs spiral iterable. Offsets with abs(x) <= width / 2
+     * and abs(y) <= height / 2 are included.
+     * @param width: int
+     * @param height: int
+     */
+    SpiralCoordinates(int width, int height){
+        xRadius = width / 2;
+        yRadius = height / 2;
+        inner = Math.min(xRadius, yRadius);
+        innerCount = (2L * inner + 1) * (2L * inner + 1);
+        size = (2L * xRadius + 1) * (2L * yRadius + 1);
+    }
+
+    /**
+     * Returns number of offsets in the spiral.
+     * @return long
+     */
+    long size(){
+        return size;
+    }
+
+    public Iterator<int[]> iterator(){
+        return new SpiralIterator();
+    }
+
+    /**
+     * Writes offset at passed index of the spiral into xy.
+     * @param index: long from 0 to size(), exclusive
+     * @param xy: int[2] receiving x, y
+     */
+    void locate(long index, int[] xy){
+        int r;           // ring holding index
+        long ringStart;  // index of first offset of ring r
+        if (index < innerCount){
+            // full rings: ring r starts at (2r - 1)^2
+            long root = (long)Math.sqrt((double)index);
+            while (root * root > index){
+                root--;
+            }
+            while ((root + 1) * (root + 1) <= index){
+                root++;
+            }
+            r = (int)((root + 1) / 2);
+            ringStart = r == 0 ? 0 : (2L * r - 1) * (2L * r - 1);
+        } else {
+            // clipped rings past the smaller radius are all the same size
+            long perRing = 2 * (2L * inner + 1);
+            long ring = (index - innerCount) / perRing;
+            r = (int)(inner + 1 + ring);
+            ringStart = innerCount + ring * perRing;
+        }
+        int k = (int)(index - ringStart);
+        if (r == 0){
+            xy[0] = 0;
+            xy[1] = 0;
+            return;
+        }
+        // up x = r
+        if (r <= xRadius){
+            int from = Math.max(1 - r, -yRadius);
+            int length = Math.min(r, yRadius) - from + 1;
+            if (k < length){
+                xy[0] = r;
+                xy[1] = from + k;
+                return;
+            }
+            k -= length;
+        }
+        // back along y = r
+        if (r <= yRadius){
+            int from = Math.min(r - 1, xRadius);
+            int length = from - Math.max(-r, -xRadius) + 1;
+            if (k < length){
+                xy[0] = from - k;
+                xy[1] = r;
+                return;
+            }
+            k -= length;
+        }
+        // down x = -r
+        if (r <= xRadius){
+            int from = Math.min(r - 1, yRadius);
+            int length = from - Math.max(-r, -yRadius) + 1;
+            if (k < length){
+                xy[0] = -r;
+                xy[1] = from - k;
+                return;
+            }
+            k -= length;
+        }
+        // along y = -r
+        xy[0] = Math.max(1 - r, -xRadius) + k;
+        xy[1] = -r;
+    }
+
+    /**
+     * Returns index in the spiral of passed offset; the inverse of
+     * locate.
+     * @param x: int with abs(x) <= width / 2
+     * @param y: int with abs(y) <= height / 2
+     * @return long from 0 to size(), exclusive
+     */
+    long indexOf(int x, int y){
+        if (Math.abs(x) > xRadius || Math.abs(y) > yRadius){
+            throw new IndexOutOfBoundsException(String.format(
+                    "Offset %s, %s is outside spiral of radii %s, %s",
+                    x, y, xRadius, yRadius
+            ));
+        }
+        int r = Math.max(Math.abs(x), Math.abs(y));
+        if (r == 0){
+            return 0;
+        }
+        long index = r <= inner ? (2L * r - 1) * (2L * r - 1) :
+                innerCount + (r - inner - 1) * 2L * (2L * inner + 1);
+        // sides in the order locate walks them
+        if (r <= xRadius){
+            int from = Math.max(1 - r, -yRadius);
+            int to = Math.min(r, yRadius);
+            if (x == r && y >= from){
+                return index + y - from;
+            }
+            index += to - from + 1;
+        }
+        if (r <= yRadius){
+            int from = Math.min(r - 1, xRadius);
+            int to = Math.max(-r, -xRadius);
+            if (y == r){
+                return index + from - x;
+            }
+            index += from - to + 1;
+        }
+        if (r <= xRadius){
+            int from = Math.min(r - 1, yRadius);
+            int to = Math.max(-r, -yRadius);
+            if (x == -r){
+                return index + from - y;
+            }
+            index += from - to + 1;
+        }
+        return index + x - Math.max(1 - r, -xRadius);
+    }
+
+    private class SpiralIterator implements Iterator<int[]>{
+        long i;             // index of next offset
+
+        public boolean hasNext(){
+            return i < size;
+        }
+
+        public int[] next(){
+            if (!hasNext()){
+                throw new NoSuchElementException();
+            }
+            int[] pos = new int[2];
+            locate(i++, pos);
+            return pos;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package img;
+
+/**
+ * Img reading packed RGB pixels straight from an int array owned
+ * by the caller, whose rows may be padded or start part way into
+ * the array. Arrays holding exactly the image are wrapped by a
+ * RasterImg instead.
+ * Searches copy the rows they compare out of the array as they go;
+ * only operations that need the whole image at once build a packed
+ * copy, and keep it.
+ */
+final class StridedRasterImg extends Img {
+    private final int[] rgb;
+    private final int offset;       // index of pixel (0, 0)
+    private final int width;
+    private final int height;
+    private final int stride;       // ints from one row to the next
+    private volatile int[] raster;  // packed copy, built on request
+
+    /**
+     * Wraps passed array.
+     * @param rgb: int[] packed RGB values
+     * @param offset: int index of pixel (0, 0)
+     * @param width: int
+     * @param height: int
+     * @param stride: int ints from the start of one row to the next
+     */
+    StridedRasterImg(int[] rgb, int offset, int width, int height, int stride){
+        if (width < 1 || height < 1 || stride < width || offset < 0 ||
+                (long)offset + (long)(height - 1) * stride + width >
+                        rgb.length){
+            throw new IllegalArgumentException(String.format(
+                    "Invalid image layout for array of %s. Offset: %s  " +
+                            "Size: %s, %s  Stride: %s",
+                    rgb.length, offset, width, height, stride
+            ));
+        }
+        this.rgb = rgb;
+        this.offset = offset;
+        this.width = width;
+        this.height = height;
+        this.stride = stride;
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    @Override
+    boolean hasRaster(){
+        return false;
+    }
+
+    @Override
+    int[] rgbRaster(){
+        int[] packed = raster;
+        if (packed == null){
+            // as with sums, racing threads build identical copies
+            packed = new int[width * height];
+            for (int y = 0; y < height; y++){
+                copyRow(0, y, width, packed, y * width);
+            }
+            raster = packed;
+        }
+        return packed;
+    }
+
+    @Override
+    void copyRow(int x, int y, int length, int[] dst, int dstIndex){
+        System.arraycopy(rgb, offset + y * stride + x, dst, dstIndex, length);
+    }
+
+    public IPixelIterable offsetPixels(int xOffset, int yOffset){
+        return new RasterImg(width, height, rgbRaster())
+                .offsetPixels(xOffset, yOffset);
+    }
+}
@@ -0,0 +1,133 @@
+package img;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Refines a whole-pixel offset found by a spatial search to a
+ * fraction of a pixel, from the scores of its four neighbours, and
+ * rates how distinct the match is.
+ * Absolute-difference scores rise about linearly either side of a
+ * match, so a V with equal slopes is fitted along each axis; a
+ * parabola would pull the estimate towards the whole pixel.
+ * Four more offsets are scored, each over the whole overlap, unless
+ * an exhaustive search has already scored them.
+ */
+final class SubPixelFit {
+    private SubPixelFit(){}
+
+    /**
+     * Returns offset refined from passed whole-pixel offset, with
+     * the confidence of the match.
+     * Confidence compares, along each axis, the slope of the fitted
+     * V with the score left at its vertex, as slope / (slope +
+     * vertex score), and keeps the lesser of the two: near 1 for a
+     * close match whose score rises steeply either side, near 0
+     * where the images match about as well one pixel off, such as
+     * along an edge or in a flat area.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param motion: float[2] whole-pixel offset
+     * @param xGate: int
+     * @param yGate: int
+     * @param options: SearchOptions
+     * @param surface: CostSurface of the search that found motion,
+     *            whose scores are read rather than recomputed, or null
+     * @return float[3] (x, y, confidence)
+     */
+    static float[] refine(
+            Img imgA,
+            Img imgB,
+            float[] motion,
+            int xGate,
+            int yGate,
+            SearchOptions options,
+            CostSurface surface
+    ){
+        int x = Math.round(motion[0]);
+        int y = Math.round(motion[1]);
+        Comparison comparison = options.getComparison();
+        float center = score(imgA, imgB, x, y, comparison, surface);
+        float left = score(imgA, imgB, x - 1, y, comparison, surface);
+        float right = score(imgA, imgB, x + 1, y, comparison, surface);
+        float up = score(imgA, imgB, x, y - 1, comparison, surface);
+        float down = score(imgA, imgB, x, y + 1, comparison, surface);
+        float xDelta = vertex(left, center, right);
+        float yDelta = vertex(up, center, down);
+        float xFit = x + xDelta;
+        float yFit = y + yDelta;
+        if (options.isRestrictedToGate()){
+            xFit = max(-xGate, min(xGate, xFit));
+            yFit = max(-yGate, min(yGate, yFit));
+        }
+        float confidence = min(
+                sharpness(left, center, right, xDelta),
+                sharpness(up, center, down, yDelta)
+        );
+        return new float[] {xFit, yFit, confidence};
+    }
+
+    /**
+     * Returns position of the vertex of a V with equal slopes
+     * through three equally spaced scores, relative to the center.
+     * @param left: float
+     * @param center: float
+     * @param right: float
+     * @return float in [-0.5, 0.5], or 0 if center is not least
+     */
+    static float vertex(float left, float center, float right){
+        float slope = max(left, right) - center;
+        if (slope <= 0 || left < center || right < center){
+            return 0f;
+        }
+        float delta = (left - right) / (2 * slope);
+        return max(-0.5f, min(0.5f, delta));
+    }
+
+    /**
+     * Returns slope / (slope + vertex score) of the V fitted through
+     * three equally spaced scores whose vertex lies at delta.
+     * @param left: float
+     * @param center: float
+     * @param right: float
+     * @param delta: float, as returned by vertex
+     * @return float in [0, 1]
+     */
+    private static float sharpness(
+            float left,
+            float center,
+            float right,
+            float delta
+    ){
+        float slope = max(left, right) - center;
+        if (slope <= 0){
+            return 0f;
+        }
+        float residual = max(0f, center - slope * Math.abs(delta));
+        return slope / (slope + residual);
+    }
+
+    private static float score(
+            Img imgA,
+            Img imgB,
+            int x,
+            int y,
+            Comparison comparison,
+            CostSurface surface
+    ){
+        // neighbours past the gates, and offsets left unscored by a
+        // stopped search, are compared here
+        if (surface != null &&
+                Math.abs(x) <= surface.getXGate() &&
+                Math.abs(y) <= surface.getYGate()){
+            float score = surface.getScore(x, y);
+            if (!Float.isNaN(score)){
+                return score;
+            }
+        }
+        return imgA.diffInRegion(
+                imgB, 0, 0, imgB.getWidth(), imgB.getHeight(), x, y, 1f,
+                comparison, false, null
+        );
+    }
+}
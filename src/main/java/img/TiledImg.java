@@ -0,0 +1,333 @@
+package img;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Img held out of core, for images too large for the heap. Pixels
+ * are kept as packed RGB in a memory-mapped scratch file, as square
+ * tiles of tileSize x tileSize pixels, each stored contiguously.
+ * Rows are read through copyRow from a bounded cache of tiles on
+ * the heap, so heap use depends on the cache size only, not on the
+ * size of the image. The cache is looked up without locking, and
+ * holds tiles for each processor, so that workers comparing
+ * offsets at once neither wait on each other nor evict each
+ * other's tiles. Comparisons with a TiledImg walk the overlap
+ * tile by tile, see Img.diffInTiles.
+ * The scratch file is deleted once mapped; its pages are released
+ * when the Img is garbage collected.
+ * Rasters, summed-area tables and luma planes are not built for a
+ * TiledImg, and its pyramid levels are TiledImgs too. Phase correlation
+ * transforms the whole image, so Tracker refuses it for a TiledImg.
+ */
+final class TiledImg extends Img {
+    // default edge of a tile; a tile of packed RGB takes 64 KiB
+    static final int DEFAULT_TILE_SIZE = 128;
+    // fewest tiles cached, so that a comparison keeps its tiles
+    static final int MIN_CACHED_TILES = 16;
+    // fewest tiles cached per processor; a comparison reads up to
+    // four tiles of an image at once, and workers run one each
+    static final int TILES_PER_PROCESSOR = 8;
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int shift;        // log2 of tileSize
+    private final int tilesX;       // tiles per row of tiles
+    private final int tilesPerSegment;
+    private final IntBuffer[] segments;
+    private final Path directory;   // where scratch files are made
+    private final int cacheTiles;   // tiles asked for
+    private final int capacity;     // most tiles cached
+    // tiles read from the scratch file, and their indices in the
+    // order they were read, oldest first
+    private final ConcurrentHashMap<Integer, int[]> cache;
+    private final ConcurrentLinkedQueue<Integer> order =
+            new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates TiledImg of passed size, with every pixel 0, backed by
+     * a new scratch file in passed directory. Pixels are then set a
+     * row at a time with writeRow, before the Img is used.
+     * @param width: int
+     * @param height: int
+     * @param tileSize: int, a power of two
+     * @param cacheTiles: int most tiles kept on the heap, raised to
+     *            TILES_PER_PROCESSOR for each processor
+     * @param directory: Path
+     * @throws IOException: On failure to create or map the file
+     */
+    TiledImg(
+            int width,
+            int height,
+            int tileSize,
+            int cacheTiles,
+            Path directory
+    ) throws IOException {
+        if (width < 1 || height < 1 || Integer.bitCount(tileSize) != 1){
+            throw new IllegalArgumentException(String.format(
+                    "Invalid tiled image. Size: %s, %s  Tile size: %s",
+                    width, height, tileSize
+            ));
+        }
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.directory = directory;
+        this.cacheTiles = cacheTiles;
+        capacity = Math.max(
+                Math.max(cacheTiles, MIN_CACHED_TILES),
+                TILES_PER_PROCESSOR *
+                        Runtime.getRuntime().availableProcessors()
+        );
+        shift = Integer.numberOfTrailingZeros(tileSize);
+        tilesX = (width + tileSize - 1) >> shift;
+        int tilesY = (height + tileSize - 1) >> shift;
+        long tileBytes = 4L * tileSize * tileSize;
+        // a mapping holds at most 2 GiB, so tiles are split between
+        // several mappings, each holding whole tiles
+        tilesPerSegment = (int)Math.min(
+                Integer.MAX_VALUE / tileBytes, (long)tilesX * tilesY
+        );
+        long nTiles = (long)tilesX * tilesY;
+        segments = new IntBuffer[(int)(
+                (nTiles + tilesPerSegment - 1) / tilesPerSegment
+        )];
+        Path file = Files.createTempFile(directory, "tiles", ".tmp");
+        try (FileChannel channel = FileChannel.open(
+                file,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE)){
+            // mappings stay valid after the channel is closed
+            for (int i = 0; i < segments.length; i++){
+                long first = (long)i * tilesPerSegment;
+                long tiles = Math.min(tilesPerSegment, nTiles - first);
+                segments[i] = channel.map(
+                        FileChannel.MapMode.READ_WRITE,
+                        first * tileBytes,
+                        tiles * tileBytes
+                ).order(ByteOrder.nativeOrder()).asIntBuffer();
+            }
+        }
+        cache = new ConcurrentHashMap<>(2 * capacity);
+    }
+
+    /**
+     * Returns a TiledImg copy of passed Img, read a row at a time.
+     * @param src: Img
+     * @param tileSize: int, a power of two
+     * @param cacheTiles: int
+     * @param directory: Path
+     * @return TiledImg
+     * @throws IOException: On failure to create or map the file
+     */
+    static TiledImg copyOf(
+            Img src,
+            int tileSize,
+            int cacheTiles,
+            Path directory
+    ) throws IOException {
+        TiledImg tiled = new TiledImg(
+                src.getWidth(), src.getHeight(),
+                tileSize, cacheTiles, directory
+        );
+        int[] row = new int[src.getWidth()];
+        for (int y = 0; y < src.getHeight(); y++){
+            src.copyRow(0, y, row.length, row, 0);
+            tiled.writeRow(y, row, 0);
+        }
+        return tiled;
+    }
+
+    /**
+     * Returns new TiledImg of passed size, stored in the same
+     * directory as this one, with tiles of the same size and a
+     * quarter of the cache, as suits the next level of a pyramid.
+     * @param width: int
+     * @param height: int
+     * @return TiledImg
+     */
+    TiledImg smaller(int width, int height){
+        try {
+            return new TiledImg(
+                    width, height, tileSize, cacheTiles / 4, directory
+            );
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Sets row y of this Img to width packed RGB values of passed
+     * array, starting at passed index. Rows must not be written
+     * while the Img is read.
+     * @param y: int
+     * @param src: int[]
+     * @param index: int
+     */
+    void writeRow(int y, int[] src, int index){
+        int tileY = y >> shift;
+        int rowInTile = (y & (tileSize - 1)) << shift;
+        for (int tileX = 0; tileX < tilesX; tileX++){
+            int x = tileX << shift;
+            int tile = tileY * tilesX + tileX;
+            IntBuffer segment = segments[tile / tilesPerSegment].duplicate();
+            segment.position(
+                    (tile % tilesPerSegment << 2 * shift) + rowInTile
+            );
+            segment.put(src, index + x, Math.min(tileSize, width - x));
+        }
+        // drop tiles read before this write
+        cache.clear();
+        order.clear();
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    @Override
+    int tileSize(){
+        return tileSize;
+    }
+
+    @Override
+    boolean hasRaster(){
+        return false;
+    }
+
+    @Override
+    int[] rgbRaster(){
+        return null; // a raster of a large image would not fit the heap
+    }
+
+    @Override
+    IntegralImage integralImage(){
+        return null; // tables of a large image would not fit the heap
+    }
+
+    @Override
+    void copyRow(int x, int y, int length, int[] dst, int dstIndex){
+        int tileY = y >> shift;
+        int rowInTile = (y & (tileSize - 1)) << shift;
+        while (length > 0){
+            int column = x & (tileSize - 1);
+            int n = Math.min(length, tileSize - column);
+            int[] tile = tile(tileY * tilesX + (x >> shift));
+            System.arraycopy(tile, rowInTile + column, dst, dstIndex, n);
+            x += n;
+            dstIndex += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    long retainedBytesBound(){
+        // pyramid levels cache at most a third more tiles, unless
+        // held to the minimum
+        return 4L * tileSize * tileSize * capacity * 4 / 3;
+    }
+
+    public IPixelIterable offsetPixels(int xOffset, int yOffset){
+        validateOffsets(xOffset, yOffset);
+        return () -> new RowPixelIterator(xOffset, yOffset);
+    }
+
+    /**
+     * Returns pixels of tile of passed index, from the cache or
+     * read from the scratch file. Tiles read by racing threads are
+     * identical, so the first one cached is kept. Once the cache is
+     * full, the tiles read longest ago are dropped first. Readers
+     * holding a dropped tile keep using it, as tiles never change
+     * while the Img is read.
+     * @param index: int
+     * @return int[] tileSize * tileSize packed RGB values
+     */
+    private int[] tile(int index){
+        int[] tile = cache.get(index);
+        if (tile != null){
+            return tile;
+        }
+        tile = new int[tileSize * tileSize];
+        IntBuffer segment = segments[index / tilesPerSegment].duplicate();
+        segment.position(index % tilesPerSegment << 2 * shift);
+        segment.get(tile);
+        int[] raced = cache.putIfAbsent(index, tile);
+        if (raced != null){
+            return raced;
+        }
+        order.add(index);
+        while (cache.size() > capacity){
+            Integer eldest = order.poll();
+            if (eldest == null){
+                break;
+            }
+            cache.remove(eldest);
+        }
+        return tile;
+    }
+
+    /**
+     * Yields the same sequence as the RasterImg iterator, reading
+     * one row at a time.
+     */
+    private class RowPixelIterator implements IPixelIterator {
+        final int xOffset;
+        final int yOffset;
+        final int[] row = new int[width];
+        int rowY = -1;      // y of row held, if any
+        int xIndex;
+        int yIndex;
+
+        private RowPixelIterator(int xOffset, int yOffset){
+            this.xOffset = xOffset;
+            this.yOffset = yOffset;
+        }
+
+        public boolean hasNext(){
+            return xIndex < width && yIndex < height;
+        }
+
+        public Integer next(){
+            int pixelX = xOffset + xIndex;
+            int pixelY = yOffset + yIndex;
+            Integer value;
+            if (pixelX < 0 || pixelX >= width ||
+                    pixelY < 0 || pixelY >= height){
+                value = null;
+            } else {
+                if (pixelY != rowY){
+                    copyRow(0, pixelY, width, row, 0);
+                    rowY = pixelY;
+                }
+                value = row[pixelX];
+            }
+            if (xIndex < width){
+                xIndex++;
+            } else {
+                yIndex++;
+                xIndex = 0;
+            }
+            return value;
+        }
+
+        public boolean hasNonNullLeft(){
+            return hasNext() &&
+                    xIndex + xOffset < width &&
+                    yIndex + yOffset < height;
+        }
+    }
+}
@@ -0,0 +1,916 @@
+package img;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Long-lived engine finding apparent motion between images.
+ * A Tracker owns the executor its searches run on, so that worker
+ * threads are reused between calls rather than created for each.
+ * Any number of threads may call appMotion on the same Tracker at
+ * once; each call waits only for its own search.
+ * Closing a Tracker shuts down its executor.
+ */
+public final class Tracker implements AutoCloseable {
+    private static Tracker common;
+
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final boolean closeable;
+
+    /**
+     * Creates Tracker running searches on a ForkJoinPool with one
+     * worker per available processor.
+     */
+    public Tracker(){
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates Tracker running searches on a ForkJoinPool with
+     * passed number of workers.
+     * @param parallelism: int, at least 1
+     */
+    public Tracker(int parallelism){
+        this(new ForkJoinPool(parallelism), parallelism);
+    }
+
+    /**
+     * Creates Tracker running searches on passed executor, which
+     * is shut down when the Tracker is closed. Each search is split
+     * between up to parallelism threads, including the calling
+     * thread. On JDK 21 and later, an executor creating a virtual
+     * thread per task may be passed here.
+     * @param executor: ExecutorService
+     * @param parallelism: int, at least 1
+     */
+    public Tracker(ExecutorService executor, int parallelism){
+        this(executor, parallelism, true);
+    }
+
+    private Tracker(
+            ExecutorService executor,
+            int parallelism,
+            boolean closeable
+    ){
+        if (parallelism < 1){
+            throw new IllegalArgumentException(
+                    "parallelism must be at least 1: " + parallelism
+            );
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.closeable = closeable;
+    }
+
+    /**
+     * Returns the Tracker shared by callers that do not supply
+     * their own, such as Img.appMotion. Its workers are daemon
+     * threads, and closing it has no effect.
+     * @return Tracker
+     */
+    public static synchronized Tracker common(){
+        if (common == null){
+            int nProcessors = Runtime.getRuntime().availableProcessors();
+            common = new Tracker(
+                    new ForkJoinPool(nProcessors), nProcessors, false
+            );
+        }
+        return common;
+    }
+
+    public int getParallelism(){
+        return parallelism;
+    }
+
+    /**
+     * Returns gates with zero gates replaced by (nearly) unlimited
+     * ones for images of the size of passed Img, as JPngTrack and
+     * FrameSequence treat a gate of zero.
+     * @param img: Img
+     * @param xGate: float, or 0 for unlimited
+     * @param yGate: float, or 0 for unlimited
+     * @return float[2] (xGate, yGate)
+     */
+    public static float[] gates(Img img, float xGate, float yGate){
+        return new float[] {
+                xGate == 0f ? (float)img.getWidth() - 1 : xGate,
+                yGate == 0f ? (float)img.getHeight() - 1 : yGate
+        };
+    }
+
+    /**
+     * Gets apparent motion between two images with a spiral search.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param xGate: float
+     * @param yGate: float
+     * @return float[2] (x, y)
+     */
+    public float[] appMotion(Img imgA, Img imgB, float xGate, float yGate){
+        return appMotion(imgA, imgB, xGate, yGate, SearchOptions.spiral());
+    }
+
+    /**
+     * Gets apparent motion between two images, using the search
+     * strategy described by passed options.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @return float[2] (x, y)
+     */
+    public float[] appMotion(
+            Img imgA,
+            Img imgB,
+            float xGate,
+            float yGate,
+            SearchOptions options
+    ){
+        checkSameSize(imgA, imgB);
+        return motion(imgA, imgB, xGate, yGate, options, newCall(options, 0L));
+    }
+
+    /**
+     * Gets apparent motion between two images, as appMotion would,
+     * with the confidence of the match when options ask for sub-pixel
+     * refinement.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @return MotionResult, always complete
+     */
+    public MotionResult appMotionResult(
+            Img imgA,
+            Img imgB,
+            float xGate,
+            float yGate,
+            SearchOptions options
+    ){
+        checkSameSize(imgA, imgB);
+        SearchCall call = newCall(options, 0L);
+        float[] motion = motion(imgA, imgB, xGate, yGate, options, call);
+        return new MotionResult(motion, true, call.confidence());
+    }
+
+    /**
+     * Gets apparent motion between two images asynchronously, as
+     * appMotion would, on the workers of this Tracker.
+     * Cancelling the returned future stops the search.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @return CompletableFuture of MotionResult, always complete
+     */
+    public CompletableFuture<MotionResult> appMotionAsync(
+            Img imgA,
+            Img imgB,
+            float xGate,
+            float yGate,
+            SearchOptions options
+    ){
+        return appMotionAsync(imgA, imgB, xGate, yGate, options, 0L, null);
+    }
+
+    /**
+     * Gets apparent motion between two images asynchronously, on the
+     * workers of this Tracker, stopping once timeout has passed.
+     * A search stopped by its deadline completes the returned future
+     * with the best offset found so far, marked incomplete. Searches
+     * check the deadline before each candidate offset, so they stop
+     * within about the time taken to score one offset; phase
+     * correlation is not split into offsets, and stops only between
+     * its steps.
+     * Cancelling the returned future stops the search.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @param timeout: long, or 0 for no deadline
+     * @param unit: TimeUnit of timeout
+     * @return CompletableFuture of MotionResult
+     */
+    public CompletableFuture<MotionResult> appMotionAsync(
+            Img imgA,
+            Img imgB,
+            float xGate,
+            float yGate,
+            SearchOptions options,
+            long timeout,
+            TimeUnit unit
+    ){
+        checkSameSize(imgA, imgB);
+        SearchCall call = newCall(
+                options, timeout > 0 ? unit.toNanos(timeout) : 0L
+        );
+        CompletableFuture<MotionResult> future =
+                new CompletableFuture<MotionResult>() {
+                    @Override
+                    public boolean cancel(boolean mayInterruptIfRunning){
+                        call.stop();
+                        return super.cancel(mayInterruptIfRunning);
+                    }
+                };
+        checkOpen();
+        executor.execute(() -> {
+            try {
+                float[] motion = motion(
+                        imgA, imgB, xGate, yGate, options, call
+                );
+                future.complete(new MotionResult(
+                        motion, !call.isTruncated(), call.confidence()
+                ));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Creates state of a call with passed options.
+     * @param options: SearchOptions
+     * @param timeoutNanos: long, or 0 for no deadline
+     * @return SearchCall
+     */
+    private static SearchCall newCall(SearchOptions options, long timeoutNanos){
+        SearchListener listener = options.getListener();
+        SearchRecorder recorder =
+                listener == null ? null : new SearchRecorder(listener);
+        if (timeoutNanos == 0L){
+            return new SearchCall(recorder);
+        }
+        return new SearchCall(recorder, System.nanoTime() + timeoutNanos);
+    }
+
+    /**
+     * Runs search described by options for one call.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @param call: SearchCall
+     * @return float[2] (x, y)
+     */
+    private float[] motion(
+            Img imgA,
+            Img imgB,
+            float xGate,
+            float yGate,
+            SearchOptions options,
+            SearchCall call
+    ){
+        float[] motion;
+        CostSurface surface = null;    // kept for sub-pixel refinement
+        switch (options.getMode()){
+            case PYRAMID:
+                motion = pyramidMotion(
+                        imgA, imgB, (int)xGate, (int)yGate, options, call
+                );
+                break;
+            case PHASE_CORRELATION:
+                if (imgA.tileSize() > 0 || imgB.tileSize() > 0){
+                    // transforms of the whole image would not fit the heap
+                    throw new IllegalArgumentException(
+                            "Phase correlation cannot search images " +
+                            "held out of core; use another search mode"
+                    );
+                }
+                if (call.stopRequested()){
+                    call.markTruncated();
+                    return null;
+                }
+                motion = PhaseCorrelation.appMotion(
+                        imgA, imgB, (int)xGate, (int)yGate, options
+                );
+                break;
+            case FEATURES:
+                motion = featureMotion(
+                        imgA, imgB, (int)xGate, (int)yGate, options, call
+                );
+                break;
+            case EXHAUSTIVE:
+                surface = surface(
+                        imgA, imgB, (int)xGate, (int)yGate, options, call
+                );
+                motion = surface.getMotion();
+                break;
+            default:
+                motion = spiralMotion(
+                        imgA, imgB, (int)xGate, (int)yGate, options, call
+                );
+        }
+        if (options.isSubPixel() && motion != null &&
+                options.getMode() != SearchMode.PHASE_CORRELATION){
+            float[] fit = SubPixelFit.refine(
+                    imgA, imgB, motion, (int)xGate, (int)yGate, options,
+                    surface
+            );
+            motion = new float[] {fit[0], fit[1]};
+            call.setConfidence(fit[2]);
+        }
+        if (call.recorder() != null){
+            call.recorder().finish(imgA, imgB, motion);
+        }
+        return motion;
+    }
+
+    /**
+     * Scores every offset within the gates of two images, for
+     * callers that need more than the best offset, such as to judge
+     * whether the match is ambiguous; see CostSurface.getAmbiguity.
+     * Rows of the surface are scored in parallel. Only the
+     * comparison of options is used.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @return CostSurface
+     */
+    public CostSurface costSurface(
+            Img imgA,
+            Img imgB,
+            float xGate,
+            float yGate,
+            SearchOptions options
+    ){
+        checkSameSize(imgA, imgB);
+        SearchCall call = newCall(options, 0L);
+        CostSurface surface = surface(
+                imgA, imgB, (int)xGate, (int)yGate, options, call
+        );
+        if (call.recorder() != null){
+            call.recorder().finish(imgA, imgB, surface.getMotion());
+        }
+        return surface;
+    }
+
+    /**
+     * Scores the cost surface of the gates, one surface row per
+     * task. Rows not started before the call is stopped are left
+     * unscored.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param xGate: int
+     * @param yGate: int
+     * @param options: SearchOptions
+     * @param call: SearchCall
+     * @return CostSurface
+     */
+    private CostSurface surface(
+            Img imgA,
+            Img imgB,
+            int xGate,
+            int yGate,
+            SearchOptions options,
+            SearchCall call
+    ){
+        CostSurface surface = new CostSurface(xGate, yGate);
+        Comparison comparison = options.getComparison();
+        runIndexed(2 * yGate + 1, i -> {
+            if (call.stopRequested()){
+                call.markTruncated();
+                return;
+            }
+            SearchRecorder.Tally tally =
+                    call.recorder() == null ? null : call.recorder().tally();
+            surface.scoreRow(imgA, imgB, i - yGate, comparison, tally);
+        });
+        if (call.recorder() != null && surface.getMotion() != null){
+            call.recorder().setBestScore(surface.getBestScore());
+        }
+        return surface;
+    }
+
+    /**
+     * Gets apparent motion of each block of a grid covering two
+     * images, for scenes in which parts of the image move
+     * independently. Blocks are searched in parallel, each stepping
+     * with options.getBlockPattern() from the prediction in options,
+     * or from (0, 0), within the gates.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param columns: int number of blocks across, at least 1
+     * @param rows: int number of blocks down, at least 1
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @return MotionField
+     */
+    public MotionField motionField(
+            Img imgA,
+            Img imgB,
+            int columns,
+            int rows,
+            float xGate,
+            float yGate,
+            SearchOptions options
+    ){
+        checkSameSize(imgA, imgB);
+        if (columns < 1 || rows < 1 ||
+                columns > imgA.getWidth() || rows > imgA.getHeight()){
+            throw new IllegalArgumentException(String.format(
+                    "Grid of %s x %s blocks does not fit image of %s x %s",
+                    columns, rows, imgA.getWidth(), imgA.getHeight()
+            ));
+        }
+        float[] prediction = options.getPrediction();
+        int xStart = prediction == null ? 0 :
+                clamp(Math.round(prediction[0]), (int)xGate);
+        int yStart = prediction == null ? 0 :
+                clamp(Math.round(prediction[1]), (int)yGate);
+        BlockSearch search = new BlockSearch(
+                imgA, imgB, columns, rows, xStart, yStart,
+                (int)xGate, (int)yGate, options.getBlockPattern(),
+                options.getComparison()
+        );
+        checkOpen();
+        search.runWith(executor, parallelism);
+        return search.result();
+    }
+
+    /**
+     * Reads images from passed paths in parallel on the workers of
+     * this Tracker, for use with matchPairs.
+     * @param paths: List of String
+     * @param cache: FrameCache to fetch images from, or null
+     * @return List of Img, in order of paths
+     * @throws IOException: On failure to read or decode any image
+     */
+    public List<Img> readAll(List<String> paths, FrameCache cache)
+            throws IOException {
+        Img[] imgs = new Img[paths.size()];
+        try {
+            runIndexed(imgs.length, i -> {
+                try {
+                    String path = paths.get(i);
+                    imgs[i] = cache == null ?
+                            Img.fromPath(path) : cache.get(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return Arrays.asList(imgs);
+    }
+
+    /**
+     * Gets apparent motion of every image of a batch relative to
+     * one reference image of it.
+     * Behaves as matchPairs, for the pairs (reference, i).
+     * @param images: List of Img
+     * @param reference: int index of reference image
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @param results: Consumer of PairMotion, called once per pair
+     */
+    public void matchOneToMany(
+            List<? extends Img> images,
+            int reference,
+            float xGate,
+            float yGate,
+            SearchOptions options,
+            Consumer<? super PairMotion> results
+    ){
+        List<int[]> pairs = new ArrayList<>();
+        for (int i = 0; i < images.size(); i++){
+            if (i != reference){
+                pairs.add(new int[] {reference, i});
+            }
+        }
+        matchPairs(images, pairs, xGate, yGate, options, results);
+    }
+
+    /**
+     * Gets apparent motion between every two images of a batch.
+     * Each unordered pair is searched once, as (i, j) with i < j;
+     * the motion of (j, i) is its negation, since both orders
+     * compare the same pixels at negated offsets.
+     * Behaves otherwise as matchPairs.
+     * @param images: List of Img
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @param results: Consumer of PairMotion, called once per pair
+     */
+    public void matchAllPairs(
+            List<? extends Img> images,
+            float xGate,
+            float yGate,
+            SearchOptions options,
+            Consumer<? super PairMotion> results
+    ){
+        List<int[]> pairs = new ArrayList<>();
+        for (int i = 0; i < images.size(); i++){
+            for (int j = i + 1; j < images.size(); j++){
+                pairs.add(new int[] {i, j});
+            }
+        }
+        matchPairs(images, pairs, xGate, yGate, options, results);
+    }
+
+    /**
+     * Gets apparent motion between each passed pair of images of a
+     * batch, as appMotion would for each pair.
+     * The data searches derive from each image, such as its sums
+     * and pyramid, is built once, in parallel, before any pair is
+     * searched. Pairs are then shared between the workers of this
+     * Tracker and the calling thread; when there are at least as
+     * many pairs as workers, each pair is searched by a single
+     * thread, which saves the cost of coordinating threads within
+     * each search.
+     * Results are passed to results as each pair finishes, from
+     * whichever thread searched it, so results must be safe to
+     * call from several threads at once. This method returns once
+     * every pair has been passed to results.
+     * @param images: List of Img
+     * @param pairs: List of int[2] (index of image A, index of B)
+     * @param xGate: float
+     * @param yGate: float
+     * @param options: SearchOptions
+     * @param results: Consumer of PairMotion, called once per pair
+     */
+    public void matchPairs(
+            List<? extends Img> images,
+            List<int[]> pairs,
+            float xGate,
+            float yGate,
+            SearchOptions options,
+            Consumer<? super PairMotion> results
+    ){
+        Img[] imgs = images.toArray(new Img[0]);
+        int[][] indices = pairs.toArray(new int[0][]);
+        for (int[] pair : indices){
+            if (pair.length != 2 ||
+                    pair[0] < 0 || pair[0] >= imgs.length ||
+                    pair[1] < 0 || pair[1] >= imgs.length){
+                throw new IllegalArgumentException(
+                        "Pair does not index two of " + imgs.length +
+                        " images: " + Arrays.toString(pair)
+                );
+            }
+            checkSameSize(imgs[pair[0]], imgs[pair[1]]);
+        }
+        runIndexed(imgs.length, i -> prepare(imgs[i], options));
+        // a Tracker on the same workers, running each search on the
+        // thread that starts it
+        Tracker pairTracker = indices.length >= parallelism ?
+                new Tracker(executor, 1, false) : this;
+        runIndexed(indices.length, i -> {
+            int[] pair = indices[i];
+            float[] motion = pairTracker.appMotion(
+                    imgs[pair[0]], imgs[pair[1]], xGate, yGate, options
+            );
+            results.accept(new PairMotion(pair[0], pair[1], motion));
+        });
+    }
+
+    /**
+     * Builds the data that searches with passed options derive from
+     * an image, so that it is not built by the first search that
+     * needs it, while other threads wait or build it too.
+     * @param img: Img
+     * @param options: SearchOptions
+     */
+    private static void prepare(Img img, SearchOptions options){
+        boolean luma = options.getComparison() == Comparison.LUMA;
+        boolean sums = options.getEliminationBlocks() > 0 && !luma;
+        switch (options.getMode()){
+            case PYRAMID:
+                ImgPyramid pyramid = img.pyramid(options.getPyramidLevels());
+                for (int level = 0; level < pyramid.size(); level++){
+                    if (sums){
+                        pyramid.level(level).integralImage();
+                    }
+                    if (luma && img.tileSize() == 0){
+                        pyramid.level(level).lumaPlane();
+                    }
+                }
+                break;
+            case FEATURES:
+                img.features(options.getMaxKeypoints());
+                break;
+            case EXHAUSTIVE:
+                if (luma && img.tileSize() == 0){
+                    img.lumaPlane();
+                }
+                break;
+            case SPIRAL:
+                if (sums){
+                    img.integralImage();
+                }
+                if (luma && img.tileSize() == 0){
+                    img.lumaPlane();
+                }
+                break;
+            default:
+                break; // phase correlation derives nothing reusable
+        }
+    }
+
+    /**
+     * Runs passed task for each index from 0 to n, exclusive, shared
+     * between the calling thread and the workers of this Tracker.
+     * Rethrows the first exception thrown by any task.
+     * @param n: int
+     * @param task: IntConsumer
+     */
+    private void runIndexed(int n, IntConsumer task){
+        IndexedWork work = new IndexedWork(n, task);
+        checkOpen();
+        work.runWith(executor, parallelism);
+        RuntimeException failure = work.failure();
+        if (failure != null){
+            throw failure;
+        }
+    }
+
+    private static void checkSameSize(Img imgA, Img imgB){
+        if (imgA.getHeight() != imgB.getHeight() ||
+                imgA.getWidth() != imgB.getWidth()){
+            throw new IllegalArgumentException(String.format(
+                    "images to compare for motion are of different size." +
+                    "(%s, %s) vs (%s, %s)",
+                    imgA.getWidth(), imgA.getHeight(),
+                    imgB.getWidth(), imgB.getHeight()
+            ));
+        }
+    }
+
+    private void checkOpen(){
+        if (executor.isShutdown()){
+            throw new IllegalStateException("Tracker has been closed");
+        }
+    }
+
+    /**
+     * Shuts down the executor of this Tracker. Searches already
+     * underway are completed.
+     */
+    @Override
+    public void close(){
+        if (closeable){
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Finds offset by a spiral search of the gates, starting from
+     * the prediction in options if there is one.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param xGate: int
+     * @param yGate: int
+     * @param options: SearchOptions
+     * @param call: SearchCall
+     * @return float[2] (x, y)
+     */
+    private float[] spiralMotion(
+            Img imgA,
+            Img imgB,
+            int xGate,
+            int yGate,
+            SearchOptions options,
+            SearchCall call
+    ){
+        float[] prediction = options.getPrediction();
+        if (prediction == null){
+            return searchWindow(
+                    imgA, imgB, 0, 0, xGate, yGate, xGate, yGate,
+                    options, call
+            );
+        }
+        int xCenter = clamp(Math.round(prediction[0]), xGate);
+        int yCenter = clamp(Math.round(prediction[1]), yGate);
+        // radii that reach every offset of the gate from the center
+        int xReach = xGate + Math.abs(xCenter);
+        int yReach = yGate + Math.abs(yCenter);
+        int[] radius = options.getPredictionRadius();
+        if (radius != null && (radius[0] < xReach || radius[1] < yReach)){
+            int xRadius = Math.min(radius[0], xReach);
+            int yRadius = Math.min(radius[1], yReach);
+            float[] best = searchWindow(
+                    imgA, imgB, xCenter, yCenter, xRadius, yRadius,
+                    xGate, yGate, options, call
+            );
+            // a best offset on an edge of the window that is not an
+            // edge of the gate may have a better neighbour outside.
+            if (best != null &&
+                    !onWindowEdge(best[0], xCenter, xRadius, xGate) &&
+                    !onWindowEdge(best[1], yCenter, yRadius, yGate)){
+                return best;
+            }
+            if (call.stopRequested()){
+                // no time left to search the rest of the gate
+                call.markTruncated();
+                return best;
+            }
+        }
+        return searchWindow(
+                imgA, imgB, xCenter, yCenter, xReach, yReach,
+                xGate, yGate, options, call
+        );
+    }
+
+    private static int clamp(int value, int limit){
+        return Math.max(-limit, Math.min(limit, value));
+    }
+
+    /**
+     * Returns whether offset lies on an edge of a search window
+     * along one axis, where that edge lies inside the gate.
+     */
+    private static boolean onWindowEdge(
+            float offset,
+            int center,
+            int radius,
+            int gate
+    ){
+        int distance = Math.round(offset) - center;
+        return (distance == radius && center + radius < gate) ||
+                (distance == -radius && center - radius > -gate);
+    }
+
+    /**
+     * Finds offset agreed on by matches between keypoints of the two
+     * images, then scores the offsets within
+     * options.getRefinementRadius() of it, so that the offset
+     * returned is the best match of the pixels around the estimate.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param xGate: int
+     * @param yGate: int
+     * @param options: SearchOptions
+     * @param call: SearchCall
+     * @return float[2] (x, y) or null if keypoints do not agree
+     */
+    private float[] featureMotion(
+            Img imgA,
+            Img imgB,
+            int xGate,
+            int yGate,
+            SearchOptions options,
+            SearchCall call
+    ){
+        if (call.stopRequested()){
+            call.markTruncated();
+            return null;
+        }
+        float[] estimate = FeatureMatch.appMotion(
+                imgA, imgB, xGate, yGate, options
+        );
+        if (estimate == null){
+            return null;
+        }
+        int radius = options.getRefinementRadius();
+        float[] refined = searchWindow(
+                imgA, imgB, (int)estimate[0], (int)estimate[1],
+                radius, radius, xGate, yGate, options, call
+        );
+        return refined == null ? estimate : refined;
+    }
+
+    /**
+     * Finds offset by searching the whole gate on the coarsest level
+     * of a pyramid built from each image, then refining the result
+     * within options.getRefinementRadius() on each finer level.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param xGate: int
+     * @param yGate: int
+     * @param options: SearchOptions
+     * @param call: SearchCall
+     * @return float[2] (x, y)
+     */
+    private float[] pyramidMotion(
+            Img imgA,
+            Img imgB,
+            int xGate,
+            int yGate,
+            SearchOptions options,
+            SearchCall call
+    ){
+        ImgPyramid pyramidA = imgA.pyramid(options.getPyramidLevels());
+        ImgPyramid pyramidB = imgB.pyramid(pyramidA.size());
+        int top = pyramidA.size() - 1;
+        // gates at coarsest level, rounded up so the full gate is covered
+        int levelXGate = (xGate + (1 << top) - 1) >> top;
+        int levelYGate = (yGate + (1 << top) - 1) >> top;
+        // start from the prediction, scaled to the coarsest level,
+        // while still covering the whole gate.
+        float[] prediction = options.getPrediction();
+        int xCenter = prediction == null ? 0 :
+                clamp(Math.round(prediction[0] / (1 << top)), levelXGate);
+        int yCenter = prediction == null ? 0 :
+                clamp(Math.round(prediction[1] / (1 << top)), levelYGate);
+        float[] best = searchWindow(
+                pyramidA.level(top), pyramidB.level(top), xCenter, yCenter,
+                levelXGate + Math.abs(xCenter), levelYGate + Math.abs(yCenter),
+                levelXGate, levelYGate, options, call
+        );
+        int radius = options.getRefinementRadius();
+        for (int level = top - 1; level >= 0; level--){
+            if (call.stopRequested()){
+                // out of time; scale the coarser estimate to full size
+                call.markTruncated();
+                return best == null ? null : new float[] {
+                        best[0] * (2 << level), best[1] * (2 << level)
+                };
+            }
+            levelXGate = (xGate + (1 << level) - 1) >> level;
+            levelYGate = (yGate + (1 << level) - 1) >> level;
+            // if nothing matched on the coarser level, search around 0
+            xCenter = best == null ? 0 : 2 * (int)best[0];
+            yCenter = best == null ? 0 : 2 * (int)best[1];
+            float[] refined = searchWindow(
+                    pyramidA.level(level), pyramidB.level(level),
+                    xCenter, yCenter,
+                    radius, radius, levelXGate, levelYGate,
+                    options, call
+            );
+            if (refined != null){
+                best = refined;
+            } else if (best != null){
+                best = new float[] {(float)xCenter, (float)yCenter};
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Searches in parallel, in a spiral around a center offset, for
+     * the offset with least difference between two images.
+     * With a sampling rate below 1 in options, offsets are scored
+     * on a sample of pixels, and the best candidates then exactly.
+     * The calling thread takes part in the search, so a search
+     * started from a worker of this Tracker cannot deadlock.
+     * @param imgA: Img
+     * @param imgB: Img
+     * @param xCenter: int
+     * @param yCenter: int
+     * @param xGate: int distance from center to search along x
+     * @param yGate: int distance from center to search along y
+     * @param xLimit: int
+     * @param yLimit: int
+     * @param options: SearchOptions
+     * @param call: SearchCall
+     * @return float[2] (x, y) or null if no offset could be compared
+     */
+    float[] searchWindow(
+            Img imgA,
+            Img imgB,
+            int xCenter,
+            int yCenter,
+            int xGate,
+            int yGate,
+            int xLimit,
+            int yLimit,
+            SearchOptions options,
+            SearchCall call
+    ){
+        if (options.getSampleStep() > 1){
+            SampledSearch search = new SampledSearch(
+                    imgA, imgB, xCenter, yCenter, xGate, yGate,
+                    xLimit, yLimit, parallelism, options, call
+            );
+            checkOpen();
+            search.runWith(executor, parallelism);
+            float[] result = search.verify();
+            if (call.recorder() != null && result != null){
+                call.recorder().setBestScore(search.bestDiff());
+            }
+            return result;
+        }
+        OffsetSearch search = new OffsetSearch(
+                imgA, imgB, xCenter, yCenter, xGate, yGate, xLimit, yLimit,
+                parallelism, options, call
+        );
+        checkOpen();
+        search.runWith(executor, parallelism);
+        float[] result = search.result();
+        if (call.recorder() != null && result != null){
+            call.recorder().setBestScore(search.bestDiff());
+        }
+        return result;
+    }
+}
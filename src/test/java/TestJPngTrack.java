@@ -1,6 +1,32 @@
+import img.Comparison;
+import img.ConstantVelocityPredictor;
+import img.FrameSequence;
+import img.Img;
+import img.MotionResult;
+import img.PairMotion;
+import img.SearchListener;
+import img.SearchMetrics;
+import img.SearchOptions;
+import img.Tracker;
 import junit.framework.TestCase;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 /** tests main class */
 public class TestJPngTrack extends TestCase {
@@ -35,4 +61,430 @@ public class TestJPngTrack extends TestCase {
         assertEquals(0f, result[0]);
         assertEquals(0f, result[1]);
     }
+
+    public void testPyramidSearchMatchesSpiralSearch()
+            throws NullPointerException, IOException {
+        String pathA = this.getClass().getClassLoader().getResource(
+                "track_test_1a.png"
+        ).getPath();
+        String pathB = this.getClass().getClassLoader().getResource(
+                "track_test_1c.png"
+        ).getPath();
+        float[] result = JPngTrack.translationFromPaths(
+                pathA, pathB, 52, 52,
+                SearchOptions.pyramid()
+                        .setPyramidLevels(3)
+                        .setRefinementRadius(2)
+        );
+        assertEquals(29f, result[0]);
+        assertEquals(-26f, result[1]);
+    }
+
+    public void testPhaseCorrelationMatchesSpiralSearch()
+            throws NullPointerException, IOException {
+        String pathA = this.getClass().getClassLoader().getResource(
+                "track_test_1a.png"
+        ).getPath();
+        String pathB = this.getClass().getClassLoader().getResource(
+                "track_test_1c.png"
+        ).getPath();
+        float[] result = JPngTrack.translationFromPaths(
+                pathA, pathB, 52, 52, SearchOptions.phaseCorrelation()
+        );
+        assertEquals(29f, result[0]);
+        assertEquals(-26f, result[1]);
+        // interpolation should only move the peak by a fraction
+        result = JPngTrack.translationFromPaths(
+                pathA, pathB, 52, 52,
+                SearchOptions.phaseCorrelation().setSubPixel(true)
+        );
+        assertEquals(29f, result[0], 0.5f);
+        assertEquals(-26f, result[1], 0.5f);
+    }
+
+    public void testConcurrentSearchesOnOneTracker() throws Exception {
+        String pathA = this.getClass().getClassLoader().getResource(
+                "track_test_1a.png"
+        ).getPath();
+        String pathB = this.getClass().getClassLoader().getResource(
+                "track_test_1c.png"
+        ).getPath();
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try (Tracker tracker = new Tracker(2)){
+            List<Future<float[]>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++){
+                results.add(callers.submit(() ->
+                        JPngTrack.translationFromPaths(
+                                pathA, pathB, 52, 52,
+                                SearchOptions.spiral(), tracker
+                        )
+                ));
+            }
+            for (Future<float[]> result : results){
+                assertEquals(29f, result.get()[0]);
+                assertEquals(-26f, result.get()[1]);
+            }
+        } finally {
+            callers.shutdown();
+        }
+    }
+
+    public void testTranslationWithUnequalGates()
+            throws NullPointerException, IOException {
+        String pathA = this.getClass().getClassLoader().getResource(
+                "track_test_1a.png"
+        ).getPath();
+        String pathB = this.getClass().getClassLoader().getResource(
+                "track_test_1c.png"
+        ).getPath();
+        float[] result = JPngTrack.translationFromPaths(
+                pathA, pathB, 40, 30
+        );
+        assertEquals(29f, result[0]);
+        assertEquals(-26f, result[1]);
+    }
+
+    public void testTranslationsFromPathsYieldsEachConsecutivePair()
+            throws NullPointerException, IOException {
+        List<String> paths = new ArrayList<>();
+        for (String name : new String[] {
+                "track_test_1a.png", "track_test_1b.png", "track_test_1c.png"
+        }){
+            paths.add(this.getClass().getClassLoader().getResource(
+                    name
+            ).getPath());
+        }
+        try (FrameSequence motions = JPngTrack.translationsFromPaths(
+                paths, 52, 52, SearchOptions.spiral()
+        )){
+            assertTrue(Arrays.equals(new float[] {23f, -15f}, motions.next()));
+            assertTrue(Arrays.equals(new float[] {6f, -11f}, motions.next()));
+            assertFalse(motions.hasNext());
+        }
+    }
+
+    public void testTranslationsFromPngStreamSplitsImages()
+            throws NullPointerException, IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (String name : new String[] {
+                "track_test_1a.png", "track_test_1c.png", "track_test_1a.png"
+        }){
+            stream.write(Files.readAllBytes(Paths.get(
+                    this.getClass().getClassLoader().getResource(
+                            name
+                    ).getPath()
+            )));
+        }
+        try (FrameSequence motions = JPngTrack.translationsFromPngStream(
+                new ByteArrayInputStream(stream.toByteArray()),
+                52, 52, SearchOptions.spiral()
+        )){
+            assertTrue(Arrays.equals(new float[] {29f, -26f}, motions.next()));
+            assertTrue(Arrays.equals(new float[] {-29f, 26f}, motions.next()));
+            assertFalse(motions.hasNext());
+        }
+    }
+
+    public void testPredictedSearchFindsSameOffset()
+            throws NullPointerException, IOException {
+        String pathA = this.getClass().getClassLoader().getResource(
+                "track_test_1a.png"
+        ).getPath();
+        String pathB = this.getClass().getClassLoader().getResource(
+                "track_test_1c.png"
+        ).getPath();
+        float[] result = JPngTrack.translationFromPaths(
+                pathA, pathB, 52, 52,
+                SearchOptions.spiral()
+                        .setPrediction(new float[] {27f, -25f})
+                        .setPredictionRadius(new int[] {3, 3})
+        );
+        assertEquals(29f, result[0]);
+        assertEquals(-26f, result[1]);
+        // a window that misses the true offset falls back to the gate
+        result = JPngTrack.translationFromPaths(
+                pathA, pathB, 52, 52,
+                SearchOptions.spiral()
+                        .setPrediction(new float[] {0f, 0f})
+                        .setPredictionRadius(new int[] {2, 2})
+        );
+        assertEquals(29f, result[0]);
+        assertEquals(-26f, result[1]);
+    }
+
+    public void testConstantVelocityPredictorTightensRadius(){
+        ConstantVelocityPredictor predictor =
+                new ConstantVelocityPredictor(2, 1, 2f);
+        assertNull(predictor.predict());
+        predictor.observe(new float[] {4f, 1f});
+        predictor.observe(new float[] {5f, 1f});
+        assertNull(predictor.searchRadius());
+        predictor.observe(new float[] {5f, 2f});
+        assertTrue(Arrays.equals(new float[] {5f, 2f}, predictor.predict()));
+        // largest recent errors were 1 on each axis
+        assertTrue(Arrays.equals(new int[] {3, 3}, predictor.searchRadius()));
+    }
+
+    public void testListenerReceivesMetricsOfSearchAndDecoding()
+            throws NullPointerException, IOException {
+        String pathA = this.getClass().getClassLoader().getResource(
+                "track_test_1a.png"
+        ).getPath();
+        String pathB = this.getClass().getClassLoader().getResource(
+                "track_test_1c.png"
+        ).getPath();
+        List<SearchMetrics> searches = new CopyOnWriteArrayList<>();
+        List<Long> decodes = new CopyOnWriteArrayList<>();
+        SearchListener listener = new SearchListener() {
+            @Override
+            public void searchCompleted(SearchMetrics metrics){
+                searches.add(metrics);
+            }
+
+            @Override
+            public void frameDecoded(long nanos){
+                decodes.add(nanos);
+            }
+        };
+        float[] result;
+        try (Tracker tracker = new Tracker(2)){
+            result = JPngTrack.translationFromPaths(
+                    pathA, pathB, 52, 52,
+                    SearchOptions.spiral().setListener(listener), tracker
+            );
+        }
+        assertEquals(29f, result[0]);
+        assertEquals(-26f, result[1]);
+        assertEquals(2, decodes.size());
+        assertEquals(1, searches.size());
+        SearchMetrics metrics = searches.get(0);
+        // every offset of the gate is either scanned or excluded
+        assertEquals(
+                105 * 105,
+                metrics.getOffsetsEvaluated() +
+                        metrics.getOffsetsExcludedBySums()
+        );
+        long pruned = 0;
+        for (long count : metrics.getPruneDepthHistogram()){
+            pruned += count;
+        }
+        assertEquals(metrics.getOffsetsPruned(), pruned);
+        long perThread = 0;
+        for (long count : metrics.getOffsetsPerThread().values()){
+            perThread += count;
+        }
+        assertEquals(metrics.getOffsetsEvaluated(), perThread);
+        assertTrue(metrics.getPixelComparisons() > 0);
+        assertTrue(metrics.getBestScore() < 1f);
+        assertEquals(
+                metrics.getOffsetsPruned(),
+                (long)metrics.toCounters().get("offsets.pruned")
+        );
+    }
+
+    public void testTranslationMatrixMatchesPairwiseTranslations()
+            throws NullPointerException, IOException {
+        List<String> paths = new ArrayList<>();
+        for (String name : new String[] {"a", "b", "c"}){
+            paths.add(this.getClass().getClassLoader().getResource(
+                    "track_test_1" + name + ".png"
+            ).getPath());
+        }
+        List<PairMotion> pairs = new CopyOnWriteArrayList<>();
+        JPngTrack.translationMatrix(
+                paths, 52, 52, SearchOptions.spiral(), pairs::add
+        );
+        assertEquals(3, pairs.size());
+        for (PairMotion pair : pairs){
+            float[] expected = JPngTrack.translationFromPaths(
+                    paths.get(pair.getIndexA()), paths.get(pair.getIndexB()),
+                    52, 52
+            );
+            assertTrue(Arrays.equals(expected, pair.getMotion()));
+        }
+        List<PairMotion> fromReference = new CopyOnWriteArrayList<>();
+        JPngTrack.translationsOneToMany(
+                paths, 0, 52, 52, SearchOptions.pyramid(), fromReference::add
+        );
+        assertEquals(2, fromReference.size());
+        for (PairMotion pair : fromReference){
+            assertEquals(0, pair.getIndexA());
+            float[] motion = pair.getMotion();
+            if (pair.getIndexB() == 1){
+                assertEquals(23f, motion[0]);
+                assertEquals(-15f, motion[1]);
+            } else {
+                assertEquals(29f, motion[0]);
+                assertEquals(-26f, motion[1]);
+            }
+        }
+    }
+
+    public void testSampledSearchMatchesExactSearch()
+            throws NullPointerException, IOException {
+        String pathA = this.getClass().getClassLoader().getResource(
+                "track_test_1a.png"
+        ).getPath();
+        for (String name : new String[] {"1b", "1c"}){
+            String pathB = this.getClass().getClassLoader().getResource(
+                    "track_test_" + name + ".png"
+            ).getPath();
+            float[] exact = JPngTrack.translationFromPaths(
+                    pathA, pathB, 52, 52
+            );
+            for (float rate : new float[] {0.25f, 1f / 16}){
+                float[] sampled = JPngTrack.translationFromPaths(
+                        pathA, pathB, 52, 52,
+                        SearchOptions.spiral().setSamplingRate(rate)
+                );
+                assertTrue(Arrays.equals(exact, sampled));
+            }
+        }
+    }
+
+    public void testLumaComparisonFindsSameOffsetsAsRgb()
+            throws NullPointerException, IOException {
+        String pathA = this.getClass().getClassLoader().getResource(
+                "track_test_1a.png"
+        ).getPath();
+        for (String name : new String[] {"1b", "1c"}){
+            String pathB = this.getClass().getClassLoader().getResource(
+                    "track_test_" + name + ".png"
+            ).getPath();
+            SearchOptions[] searches = {
+                    SearchOptions.spiral(),
+                    SearchOptions.pyramid(),
+                    SearchOptions.spiral().setSamplingRate(0.25f)
+            };
+            for (SearchOptions options : searches){
+                float[] rgb = JPngTrack.translationFromPaths(
+                        pathA, pathB, 52, 52, options
+                );
+                float[] luma = JPngTrack.translationFromPaths(
+                        pathA, pathB, 52, 52,
+                        options.copy().setComparison(Comparison.LUMA)
+                );
+                assertTrue(Arrays.equals(rgb, luma));
+            }
+        }
+    }
+
+    public void testAsyncSearchCompletesOrStopsAtDeadline()
+            throws Exception {
+        Img imgA = Img.fromPath(this.getClass().getClassLoader().getResource(
+                "track_test_1a.png"
+        ).getPath());
+        Img imgB = Img.fromPath(this.getClass().getClassLoader().getResource(
+                "track_test_1c.png"
+        ).getPath());
+        try (Tracker tracker = new Tracker(2)){
+            MotionResult result = tracker.appMotionAsync(
+                    imgA, imgB, 52, 52, SearchOptions.spiral(),
+                    1, TimeUnit.MINUTES
+            ).get();
+            assertTrue(result.isComplete());
+            assertEquals(29f, result.getMotion()[0]);
+            assertEquals(-26f, result.getMotion()[1]);
+            // a deadline that has passed before the search starts
+            // still completes, with whatever was found by then
+            for (SearchOptions options : new SearchOptions[] {
+                    SearchOptions.spiral(), SearchOptions.pyramid()}){
+                MotionResult late = tracker.appMotionAsync(
+                        imgA, imgB, 52, 52, options, 1, TimeUnit.NANOSECONDS
+                ).get();
+                assertFalse(late.isComplete());
+            }
+            CompletableFuture<MotionResult> cancelled =
+                    tracker.appMotionAsync(
+                            imgA, imgB, 52, 52, SearchOptions.spiral()
+                    );
+            cancelled.cancel(true);
+            assertTrue(cancelled.isCancelled());
+            // the tracker is still usable after a cancelled search
+            assertTrue(tracker.appMotionAsync(
+                    imgA, imgB, 52, 52, SearchOptions.spiral()
+            ).get().isComplete());
+        }
+    }
+
+    public void testCliWritesOneLinePerPairOfDirectory()
+            throws IOException {
+        Path dir = Files.createTempDirectory("frames");
+        String[] frames = {
+                "track_test_1a.png", "track_test_1c.png", "track_test_1a.png"
+        };
+        try {
+            for (int i = 0; i < frames.length; i++){
+                Files.copy(
+                        Paths.get(this.getClass().getClassLoader()
+                                .getResource(frames[i]).getPath()),
+                        dir.resolve("frame" + i + ".png")
+                );
+            }
+            Files.write(dir.resolve("frame3.png"), new byte[] {1, 2, 3});
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            int status = JPngTrackCli.run(new String[] {
+                    "--dir", dir.toString(), "--x-gate", "52",
+                    "--y-gate", "52", "--queue", "2", "--searchers", "2"
+            }, new PrintStream(bytes, true, "UTF-8"));
+            // the last frame is not a PNG, so its pair fails
+            assertEquals(1, status);
+            List<String> lines = new ArrayList<>(Arrays.asList(
+                    bytes.toString("UTF-8").split("\n")
+            ));
+            assertEquals(3, lines.size());
+            lines.sort(null);  // pairs may finish in any order
+            assertTrue(lines.get(0).startsWith("{\"index\":0,"));
+            assertTrue(lines.get(0).contains("\"x\":29.0,\"y\":-26.0,"));
+            assertTrue(lines.get(1).contains("\"x\":-29.0,\"y\":26.0,"));
+            assertTrue(lines.get(2).contains("\"error\":"));
+        } finally {
+            try (Stream<Path> files = Files.list(dir)){
+                files.forEach(file -> file.toFile().delete());
+            }
+            Files.delete(dir);
+        }
+    }
+
+    public void testCliReadsFramesInListedOrder() throws IOException {
+        Path list = Files.createTempFile("frames", ".txt");
+        String pathA = this.getClass().getClassLoader().getResource(
+                "track_test_1a.png"
+        ).getPath();
+        String pathC = this.getClass().getClassLoader().getResource(
+                "track_test_1c.png"
+        ).getPath();
+        try {
+            // frames follow the list, not their names; blank lines
+            // and surrounding spaces are ignored
+            Files.write(list, Arrays.asList(
+                    pathC, "", "  " + pathA + "  ", pathC
+            ));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            int status = JPngTrackCli.run(new String[] {
+                    "--list", list.toString(),
+                    "--x-gate", "52", "--y-gate", "52",
+                    // one pair in flight; the first frame takes no slot
+                    "--queue", "1"
+            }, new PrintStream(bytes, true, "UTF-8"));
+            assertEquals(0, status);
+            List<String> lines = new ArrayList<>(Arrays.asList(
+                    bytes.toString("UTF-8").split("\n")
+            ));
+            assertEquals(2, lines.size());
+            lines.sort(null);  // pairs may finish in any order
+            assertTrue(lines.get(0).startsWith("{\"index\":0,"));
+            assertTrue(lines.get(0).contains("\"x\":-29.0,\"y\":26.0,"));
+            assertTrue(lines.get(1).startsWith("{\"index\":1,"));
+            assertTrue(lines.get(1).contains("\"x\":29.0,\"y\":-26.0,"));
+        } finally {
+            Files.delete(list);
+        }
+        try {
+            JPngTrackCli.run(new String[] {
+                    "--list", list.toString(), "--dir", "."
+            }, new PrintStream(new ByteArrayOutputStream()));
+            fail("two sources were accepted");
+        } catch (IllegalArgumentException expected){}
+    }
 }
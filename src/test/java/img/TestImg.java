@@ -0,0 +1,601 @@
+package img;
+
+import junit.framework.TestCase;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.imageio.ImageIO;
+
+/** tests Img implementations */
+public class TestImg extends TestCase {
+    private String resourcePath(String name){
+        return this.getClass().getClassLoader().getResource(name).getPath();
+    }
+
+    public void testRasterMatchesDecodedImage() throws IOException {
+        String path = resourcePath("track_test_1a.png");
+        BufferedImage decoded = ImageIO.read(new File(path));
+        Img img = Img.fromPath(path);
+        int[] raster = img.rgbRaster();
+        assertEquals(decoded.getWidth(), img.getWidth());
+        assertEquals(decoded.getHeight(), img.getHeight());
+        for (int y = 0; y < img.getHeight(); y += 7){
+            for (int x = 0; x < img.getWidth(); x += 5){
+                assertEquals(
+                        decoded.getRGB(x, y),
+                        raster[y * img.getWidth() + x]
+                );
+            }
+        }
+    }
+
+    public void testPixelIterablesOfRasterAndBuffImgAgree()
+            throws IOException {
+        String path = resourcePath("track_test_1a.png");
+        IPixelIterator raster = Img.fromPath(path)
+                .offsetPixels(3, -2).iterator();
+        IPixelIterator buff = BuffImg.BuffImgFromPath(path)
+                .offsetPixels(3, -2).iterator();
+        while (buff.hasNext()){
+            assertTrue(raster.hasNext());
+            assertEquals(buff.hasNonNullLeft(), raster.hasNonNullLeft());
+            assertEquals(buff.next(), raster.next());
+        }
+        assertFalse(raster.hasNext());
+    }
+
+    public void testSpiralOrderCoversRectangleOnce(){
+        SpiralCoordinates spiral = new SpiralCoordinates(10, 4);
+        Set<Long> seen = new HashSet<>();
+        List<int[]> order = new ArrayList<>();
+        for (int[] pos : spiral){
+            assertTrue(Math.abs(pos[0]) <= 5);
+            assertTrue(Math.abs(pos[1]) <= 2);
+            assertTrue(seen.add((long)pos[0] << 32 | pos[1] & 0xFFFFFFFFL));
+            order.add(pos);
+        }
+        assertEquals(11 * 5, seen.size());
+        assertEquals(11 * 5, spiral.size());
+        // spiral starts at the center, then turns about it
+        assertEquals(0, order.get(0)[0]);
+        assertEquals(0, order.get(0)[1]);
+        assertEquals(1, order.get(1)[0]);
+        assertEquals(0, order.get(1)[1]);
+        // rings grow by one in each direction, nearest first
+        for (int i = 1; i < order.size(); i++){
+            assertTrue(ring(order.get(i - 1)) <= ring(order.get(i)));
+        }
+        // indexOf inverts locate, whichever radius is larger
+        for (int[] size : new int[][] {{10, 4}, {4, 10}, {6, 6}}){
+            SpiralCoordinates shape = new SpiralCoordinates(size[0], size[1]);
+            long i = 0;
+            for (int[] pos : shape){
+                assertEquals(i++, shape.indexOf(pos[0], pos[1]));
+            }
+        }
+        // positions are computed, so gates beyond int indices work
+        int[] xy = new int[2];
+        SpiralCoordinates huge = new SpiralCoordinates(80000, 80000);
+        assertEquals(80001L * 80001L, huge.size());
+        huge.locate(huge.size() - 1, xy);
+        assertEquals(40000, xy[0]);
+        assertEquals(-40000, xy[1]);
+        assertEquals(huge.size() - 1, huge.indexOf(40000, -40000));
+    }
+
+    private static int ring(int[] pos){
+        return Math.max(Math.abs(pos[0]), Math.abs(pos[1]));
+    }
+
+    public void testPngDecoderReadsPaletteAndSixteenBitImages()
+            throws IOException {
+        BufferedImage indexed = new BufferedImage(
+                7, 5, BufferedImage.TYPE_BYTE_INDEXED
+        );
+        BufferedImage grey = new BufferedImage(
+                7, 5, BufferedImage.TYPE_USHORT_GRAY
+        );
+        for (int y = 0; y < 5; y++){
+            for (int x = 0; x < 7; x++){
+                indexed.setRGB(x, y, 0xFF000000 | (x * 40) << 16 | y * 60);
+                grey.getRaster().setSample(x, y, 0, x * 9000 + y * 300);
+            }
+        }
+        File indexedFile = File.createTempFile("indexed", ".png");
+        File greyFile = File.createTempFile("grey", ".png");
+        try {
+            ImageIO.write(indexed, "png", indexedFile);
+            ImageIO.write(grey, "png", greyFile);
+            int[] indexedRgb = Img.fromPath(indexedFile.getPath()).rgbRaster();
+            int[] greyRgb = Img.fromPath(greyFile.getPath()).rgbRaster();
+            for (int y = 0; y < 5; y++){
+                for (int x = 0; x < 7; x++){
+                    assertEquals(indexed.getRGB(x, y), indexedRgb[y * 7 + x]);
+                    int level = grey.getRaster().getSample(x, y, 0) >> 8;
+                    assertEquals(
+                            0xFF000000 | level << 16 | level << 8 | level,
+                            greyRgb[y * 7 + x]
+                    );
+                }
+            }
+        } finally {
+            indexedFile.delete();
+            greyFile.delete();
+        }
+    }
+
+    public void testPngStreamRejectsTruncatedOrCorruptImages()
+            throws IOException {
+        byte[] png = Files.readAllBytes(
+                new File(resourcePath("track_test_1a.png")).toPath()
+        );
+        assertNull(new PngStreamSource(
+                new ByteArrayInputStream(new byte[0])).next());
+        // stream ending within the signature of a second image
+        byte[] partial = Arrays.copyOf(png, png.length + 3);
+        System.arraycopy(png, 0, partial, png.length, 3);
+        PngStreamSource source = new PngStreamSource(
+                new ByteArrayInputStream(partial)
+        );
+        assertNotNull(source.next());
+        try {
+            source.next();
+            fail("partial signature was accepted");
+        } catch (IOException expected){}
+        // first chunk claiming a negative length
+        byte[] corrupt = png.clone();
+        corrupt[8] = (byte)0x80;
+        try {
+            new PngStreamSource(new ByteArrayInputStream(corrupt)).next();
+            fail("negative chunk length was accepted");
+        } catch (IOException expected){}
+        // first chunk claiming more data than the stream holds
+        corrupt[8] = 0x3f;
+        try {
+            new PngStreamSource(new ByteArrayInputStream(corrupt)).next();
+            fail("truncated chunk was accepted");
+        } catch (IOException expected){}
+    }
+
+    public void testSumEliminationNeverExcludesOffsetAtItsOwnDiff()
+            throws IOException {
+        Img imgA = Img.fromPath(resourcePath("track_test_1a.png"));
+        Img imgB = Img.fromPath(resourcePath("track_test_1b.png"));
+        for (int y = -40; y <= 40; y += 8){
+            for (int x = -40; x <= 40; x += 8){
+                float diff = imgA.diffAtOffset(imgB, x, y, 1f);
+                for (int blocks : new int[] {1, 4, 32}){
+                    assertFalse(imgA.excludedBySums(imgB, x, y, diff, blocks));
+                }
+            }
+        }
+        // an identical image can not be matched at any other offset
+        assertTrue(imgA.excludedBySums(imgA, 3, 0, 0f, 4));
+    }
+
+    public void testRowKernelMatchesPerPixelComparison(){
+        java.util.Random random = new java.util.Random(7);
+        int[] a = new int[103];
+        int[] b = new int[103];
+        for (int i = 0; i < a.length; i++){
+            a[i] = random.nextInt();
+            b[i] = random.nextInt();
+        }
+        int expected = 0;
+        for (int i = 2; i < 2 + 97; i++){
+            expected += Math.round(ColorUtil.compareRGB(a[i], b[i - 1]) * 765);
+        }
+        assertEquals(expected, ColorUtil.sumAbsDiffRGB(a, 2, b, 1, 97));
+    }
+
+    public void testCostSurfaceMatchesDiffAtEachOffset() throws IOException {
+        Img imgA = Img.fromPath(resourcePath("track_test_1a.png"));
+        Img imgB = Img.fromPath(resourcePath("track_test_1b.png"));
+        try (Tracker tracker = new Tracker(2)){
+            for (Comparison comparison : Comparison.values()){
+                SearchOptions options =
+                        SearchOptions.exhaustive().setComparison(comparison);
+                CostSurface surface = tracker.costSurface(
+                        imgA, imgB, 6, 5, options
+                );
+                for (int y = -5; y <= 5; y++){
+                    for (int x = -6; x <= 6; x++){
+                        assertEquals(imgA.diffInRegion(
+                                imgB, 0, 0, imgB.getWidth(), imgB.getHeight(),
+                                x, y, 1f, comparison, false, null
+                        ), surface.getScore(x, y));
+                    }
+                }
+                options.setMode(SearchMode.SPIRAL);
+                assertTrue(Arrays.equals(
+                        tracker.appMotion(imgA, imgB, 6, 5, options),
+                        surface.getMotion()
+                ));
+            }
+        }
+        // stripes repeating every 4 pixels match at each repeat
+        int[] stripes = new int[64 * 32];
+        for (int i = 0; i < stripes.length; i++){
+            stripes[i] = (i % 64) / 2 % 2 == 0 ? 0xffffff : 0;
+        }
+        Img striped = new RasterImg(64, 32, stripes);
+        CostSurface surface = Tracker.common().costSurface(
+                striped, striped, 6, 2, SearchOptions.exhaustive()
+        );
+        assertEquals(0f, surface.getBestScore());
+        assertEquals(0f, surface.getRunnerUpScore());
+        assertEquals(1f, surface.getAmbiguity());
+        // stripes half a period apart tie at several offsets, of
+        // which both modes pick the first in spiral order
+        int[] shifted = new int[64 * 32];
+        for (int i = 0; i < shifted.length; i++){
+            shifted[i] = (i % 64 + 2) / 2 % 2 == 0 ? 0xffffff : 0;
+        }
+        Img half = new RasterImg(64, 32, shifted);
+        surface = Tracker.common().costSurface(
+                striped, half, 6, 2, SearchOptions.exhaustive()
+        );
+        float[] spiral = Tracker.common().appMotion(
+                striped, half, 6, 2, SearchOptions.spiral()
+        );
+        assertEquals(surface.getBestScore(), surface.getScore(
+                -(int)spiral[0], (int)spiral[1]
+        ));
+        assertTrue(Arrays.equals(spiral, surface.getMotion()));
+    }
+
+    public void testFeatureSearchFindsLargeMotion(){
+        // a scene of random rectangles, seen through two windows
+        // 70 pixels apart across and 45 down
+        int sceneWidth = 320;
+        int sceneHeight = 240;
+        int[] scene = new int[sceneWidth * sceneHeight];
+        java.util.Random random = new java.util.Random(3);
+        for (int n = 0; n < 300; n++){
+            int x0 = random.nextInt(sceneWidth);
+            int y0 = random.nextInt(sceneHeight);
+            int x1 = Math.min(sceneWidth, x0 + 4 + random.nextInt(24));
+            int y1 = Math.min(sceneHeight, y0 + 4 + random.nextInt(24));
+            int color = random.nextInt(0x1000000);
+            for (int y = y0; y < y1; y++){
+                Arrays.fill(
+                        scene, y * sceneWidth + x0, y * sceneWidth + x1, color
+                );
+            }
+        }
+        int width = 240;
+        int height = 180;
+        int[] a = new int[width * height];
+        int[] b = new int[width * height];
+        for (int y = 0; y < height; y++){
+            System.arraycopy(
+                    scene, (y + 50) * sceneWidth + 75, a, y * width, width
+            );
+            System.arraycopy(
+                    scene, (y + 5) * sceneWidth + 5, b, y * width, width
+            );
+        }
+        Img imgA = new RasterImg(width, height, a);
+        Img imgB = new RasterImg(width, height, b);
+        // pixel (x, y) of B shows scene point (x + 5, y + 5), which
+        // A shows at (x - 70, y - 45)
+        assertTrue(Arrays.equals(
+                new float[] {-70f, -45f},
+                Tracker.common().appMotion(
+                        imgA, imgB, 100, 80, SearchOptions.features()
+                )
+        ));
+        // keypoints of a flat image cannot agree on any motion
+        Img flat = new RasterImg(width, height, new int[width * height]);
+        assertNull(Tracker.common().appMotion(
+                flat, flat, 100, 80, SearchOptions.features()
+        ));
+    }
+
+    public void testMotionFieldFindsMotionOfEachHalf(){
+        int width = 128;
+        int height = 64;
+        int[] a = new int[width * height];
+        int[] b = new int[width * height];
+        for (int y = 0; y < height; y++){
+            for (int x = 0; x < width; x++){
+                a[y * width + x] = smoothTexture(x, y);
+                // left half moves by (2, 0), right half by (-3, 1)
+                b[y * width + x] = x < width / 2 ?
+                        smoothTexture(x + 2, y) : smoothTexture(x - 3, y + 1);
+            }
+        }
+        Img imgA = new RasterImg(width, height, a);
+        Img imgB = new RasterImg(width, height, b);
+        for (BlockPattern pattern : BlockPattern.values()){
+            MotionField field;
+            try (Tracker tracker = new Tracker(2)){
+                field = tracker.motionField(
+                        imgA, imgB, 2, 1, 8, 8,
+                        SearchOptions.spiral().setBlockPattern(pattern)
+                );
+            }
+            assertEquals(2f, field.getX(0, 0));
+            assertEquals(0f, field.getY(0, 0));
+            assertEquals(-3f, field.getX(1, 0));
+            assertEquals(1f, field.getY(1, 0));
+        }
+    }
+
+    private static int smoothTexture(double x, double y){
+        int r = (int)(128 + 100 * Math.sin(x * 0.2) * Math.cos(y * 0.15));
+        int g = (int)(128 + 100 * Math.cos(x * 0.13 + y * 0.1));
+        int b = (int)(128 + 100 * Math.sin(x * 0.07 - y * 0.17));
+        return r << 16 | g << 8 | b;
+    }
+
+    public void testSubPixelFitFindsFractionalMotion(){
+        int width = 128;
+        int height = 128;
+        int[] a = new int[width * height];
+        int[] b = new int[width * height];
+        int[] flat = new int[width * height];
+        for (int y = 0; y < height; y++){
+            for (int x = 0; x < width; x++){
+                a[y * width + x] = smoothTexture(x, y);
+                b[y * width + x] = smoothTexture(x + 2.3, y - 1.6);
+            }
+        }
+        Arrays.fill(flat, 0x808080);
+        Img imgA = new RasterImg(width, height, a);
+        Img imgB = new RasterImg(width, height, b);
+        Img flatImg = new RasterImg(width, height, flat);
+        try (Tracker tracker = new Tracker(1)){
+            for (SearchOptions options : new SearchOptions[] {
+                    SearchOptions.spiral(), SearchOptions.pyramid(),
+                    SearchOptions.exhaustive()}){
+                options.setSubPixel(true);
+                MotionResult result = tracker.appMotionResult(
+                        imgA, imgB, 8, 8, options
+                );
+                assertEquals(2.3f, result.getMotion()[0], 0.15f);
+                assertEquals(-1.6f, result.getMotion()[1], 0.15f);
+                assertTrue(result.getConfidence() > 0.5f);
+                // every offset matches a flat image equally well
+                assertEquals(0f, tracker.appMotionResult(
+                        flatImg, flatImg, 8, 8, options
+                ).getConfidence());
+            }
+            assertTrue(Float.isNaN(tracker.appMotionResult(
+                    imgA, imgB, 8, 8, SearchOptions.spiral()
+            ).getConfidence()));
+            // motion a fraction of a pixel past the gate
+            int[] c = new int[width * height];
+            for (int y = 0; y < height; y++){
+                for (int x = 0; x < width; x++){
+                    c[y * width + x] = smoothTexture(x + 8.4, y);
+                }
+            }
+            Img imgC = new RasterImg(width, height, c);
+            for (SearchOptions options : new SearchOptions[] {
+                    SearchOptions.spiral(), SearchOptions.exhaustive()}){
+                options.setSubPixel(true);
+                assertEquals(8f, tracker.appMotion(
+                        imgA, imgC, 8, 8, options
+                )[0]);
+                options.setRestrictedToGate(false);
+                assertEquals(8.4f, tracker.appMotion(
+                        imgA, imgC, 8, 8, options
+                )[0], 0.15f);
+            }
+        }
+    }
+
+    public void testFrameCacheReusesImagesUntilChangedOrEvicted()
+            throws IOException {
+        File fileA = File.createTempFile("cache_a", ".png");
+        File fileB = File.createTempFile("cache_b", ".png");
+        try {
+            Files.copy(
+                    new File(resourcePath("track_test_1a.png")).toPath(),
+                    fileA.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING
+            );
+            Files.copy(
+                    new File(resourcePath("track_test_1b.png")).toPath(),
+                    fileB.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING
+            );
+            Img decoded = Img.fromPath(fileA.getPath());
+            // room for exactly one image of this size
+            FrameCache cache = new FrameCache(decoded.retainedBytesBound());
+            Img first = cache.get(fileA.getPath());
+            assertSame(first, cache.get(fileA.getPath()));
+            assertEquals(1, cache.getHits());
+            // a changed file is decoded again
+            assertTrue(fileA.setLastModified(
+                    fileA.lastModified() - 10000
+            ));
+            Img changed = cache.get(fileA.getPath());
+            assertNotSame(first, changed);
+            assertEquals(1, cache.size());
+            // another image evicts the least recently used one
+            cache.get(fileB.getPath());
+            assertEquals(1, cache.size());
+            assertEquals(1, cache.getEvictions());
+            assertTrue(cache.getBytes() <= cache.getMaxBytes());
+            assertNotSame(changed, cache.get(fileA.getPath()));
+        } finally {
+            fileA.delete();
+            fileB.delete();
+        }
+    }
+
+    public void testInterleavedScanScoresMatchRasterScan()
+            throws IOException {
+        Img imgA = Img.fromPath(resourcePath("track_test_1a.png"));
+        Img imgB = Img.fromPath(resourcePath("track_test_1c.png"));
+        int width = imgB.getWidth();
+        int height = imgB.getHeight();
+        for (int y = -60; y <= 60; y += 13){
+            for (int x = -60; x <= 60; x += 11){
+                float raster = imgA.diffInRegion(
+                        imgB, 0, 0, width, height, x, y, 1f,
+                        Comparison.RGB, false, null
+                );
+                float interleaved = imgA.diffInRegion(
+                        imgB, 0, 0, width, height, x, y, 1f,
+                        Comparison.RGB, true, null
+                );
+                assertEquals(raster, interleaved);
+                // both exclude exactly the same offsets
+                float below = Math.nextDown(raster);
+                assertEquals(1f, imgA.diffInRegion(
+                        imgB, 0, 0, width, height, x, y, below,
+                        Comparison.RGB, true, null
+                ));
+                assertEquals(raster, imgA.diffInRegion(
+                        imgB, 0, 0, width, height, x, y, raster,
+                        Comparison.RGB, true, null
+                ));
+            }
+        }
+    }
+
+    public void testWrappedBuffersCompareAsDecodedImage()
+            throws IOException {
+        Img imgA = Img.fromPath(resourcePath("track_test_1a.png"));
+        Img imgB = Img.fromPath(resourcePath("track_test_1c.png"));
+        int width = imgB.getWidth();
+        int height = imgB.getHeight();
+        int[] rgb = imgB.rgbRaster();
+        // rows padded by 5 pixels, after a 7 pixel header
+        int rgbStride = 3 * width + 5;
+        byte[] packedRgb = new byte[7 + height * rgbStride];
+        int intStride = width + 3;
+        int[] paddedInts = new int[2 + height * intStride];
+        ByteBuffer bgra = ByteBuffer.allocateDirect(4 * width * height);
+        for (int y = 0; y < height; y++){
+            for (int x = 0; x < width; x++){
+                int color = rgb[y * width + x];
+                int i = 7 + y * rgbStride + 3 * x;
+                packedRgb[i] = (byte)ColorUtil.r(color);
+                packedRgb[i + 1] = (byte)ColorUtil.g(color);
+                packedRgb[i + 2] = (byte)ColorUtil.b(color);
+                paddedInts[2 + y * intStride + x] = color;
+                int j = 4 * (y * width + x);
+                bgra.put(j, (byte)ColorUtil.b(color));
+                bgra.put(j + 1, (byte)ColorUtil.g(color));
+                bgra.put(j + 2, (byte)ColorUtil.r(color));
+            }
+        }
+        File raw = File.createTempFile("wrapped", ".raw");
+        try {
+            Files.write(raw.toPath(), packedRgb);
+            Img[] wrapped = {
+                    Img.wrap(packedRgb, 7, width, height, rgbStride,
+                            PixelFormat.RGB),
+                    Img.wrap(paddedInts, 2, width, height, intStride),
+                    Img.wrap(bgra, width, height, 4 * width,
+                            PixelFormat.BGRA),
+                    Img.map(raw.toPath(), 7, width, height, rgbStride,
+                            PixelFormat.RGB),
+            };
+            for (Img img : wrapped){
+                assertFalse(img.hasRaster());
+                for (int offset = -40; offset <= 40; offset += 20){
+                    assertEquals(
+                            imgA.diffAtOffset(imgB, offset, -offset, 1f),
+                            imgA.diffAtOffset(img, offset, -offset, 1f)
+                    );
+                    assertEquals(
+                            imgA.diffAtOffset(imgB, offset, offset, 1f),
+                            img.diffAtOffset(imgA, -offset, -offset, 1f)
+                    );
+                }
+                float[] motion = imgA.appMotion(img, 52, 52);
+                assertEquals(29f, motion[0]);
+                assertEquals(-26f, motion[1]);
+                // reading the whole image leaves the buffer untouched
+                assertTrue(Arrays.equals(rgb, img.rgbRaster()));
+            }
+            assertEquals(0, bgra.position());
+        } finally {
+            raw.delete();
+        }
+    }
+
+    public void testTiledImgComparesAsDecodedImage() throws IOException {
+        String pathA = resourcePath("track_test_1a.png");
+        String pathB = resourcePath("track_test_1c.png");
+        Img imgA = Img.fromPath(pathA);
+        Img imgB = Img.fromPath(pathB);
+        File directory = new File(System.getProperty("java.io.tmpdir"));
+        // over 1000 tiles per image, far more than are cached at once
+        TiledImg tiledA = PngDecoder.decodeTiled(
+                pathA, directory.toPath(), 8, 16
+        );
+        TiledImg tiledB = PngDecoder.decodeTiled(
+                pathB, directory.toPath(), 8, 16
+        );
+        int width = imgB.getWidth();
+        int height = imgB.getHeight();
+        int[] row = new int[width - 3];
+        for (int y = 0; y < height; y++){
+            tiledB.copyRow(3, y, row.length, row, 0);
+            for (int x = 0; x < row.length; x++){
+                assertEquals(imgB.rgbRaster()[y * width + x + 3], row[x]);
+            }
+        }
+        for (Comparison comparison : Comparison.values()){
+            for (int offset = -40; offset <= 40; offset += 20){
+                float expected = imgA.diffInRegion(
+                        imgB, 0, 0, width, height, offset, -offset, 1f,
+                        comparison, false, null
+                );
+                assertEquals(expected, tiledA.diffInRegion(
+                        tiledB, 0, 0, width, height, offset, -offset, 1f,
+                        comparison, false, null
+                ));
+                assertEquals(expected, imgA.diffInRegion(
+                        tiledB, 0, 0, width, height, offset, -offset, 1f,
+                        comparison, false, null
+                ));
+                assertEquals(1f, tiledA.diffInRegion(
+                        tiledB, 0, 0, width, height, offset, -offset,
+                        Math.nextDown(expected), comparison, false, null
+                ));
+            }
+        }
+        SearchOptions[] searches = {
+                SearchOptions.spiral(),
+                SearchOptions.pyramid(),
+                SearchOptions.spiral().setComparison(Comparison.LUMA),
+        };
+        for (SearchOptions options : searches){
+            float[] motion = tiledA.appMotion(tiledB, 52, 52, options);
+            assertEquals(29f, motion[0]);
+            assertEquals(-26f, motion[1]);
+        }
+        // tiled images are only read by row
+        assertFalse(tiledA.hasRaster());
+        assertNull(tiledA.rgbRaster());
+        // keypoints are found from rows streamed out of the tiles
+        FeatureSet features = FeatureSet.of(imgA, 64);
+        FeatureSet tiledFeatures = FeatureSet.of(tiledA, 64);
+        assertTrue(features.size > 0);
+        assertTrue(Arrays.equals(features.xs, tiledFeatures.xs));
+        assertTrue(Arrays.equals(features.ys, tiledFeatures.ys));
+        assertTrue(Arrays.equals(features.patches, tiledFeatures.patches));
+        try {
+            tiledA.appMotion(tiledB, 52, 52, SearchOptions.phaseCorrelation());
+            fail("phase correlation was run on tiled images");
+        } catch (IllegalArgumentException expected){}
+        assertTrue(tiledA.pyramid(3).level(2) instanceof TiledImg);
+    }
+}